@@ -0,0 +1,139 @@
+package org.robincores.r8.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robincores.r8.cpu.Memory;
+import org.robincores.r8.system.MemoryMap;
+import org.robincores.r8.system.R824System;
+import org.robincores.r8.system.RAM;
+import org.robincores.r8.system.SparseRAM;
+import org.robincores.r8.system.TextDevice;
+import org.robincores.r8.system.VideoDevice;
+import org.robincores.r8.system.VideoRAM;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte accesses of the page-table {@link MemoryMap} with the region search
+ * it replaced, which streamed over all regions on every access.
+ * <p>
+ * Both maps have the layout of {@link R824System}: System RAM, VRAM and three small
+ * device regions. Stand-ins replace the devices, so only the lookup is measured. Three
+ * in four accesses go to the low 64KB of RAM, where a program keeps its code and data,
+ * and the rest go to VRAM. The score is the time per access.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryMapBenchmark {
+  private static final int ACCESSES = 4096;
+  private static final int VRAM_BASE = 0xE00000;
+
+  private final int[] addresses = new int[ACCESSES];
+  private MemoryMap pageTable;
+  private StreamMemoryMap streamSearch;
+
+  @Setup
+  public void setup() {
+    pageTable = new MemoryMap();
+    streamSearch = new StreamMemoryMap();
+    mapRegion(0x000000, R824System.SYSTEM_RAM_SIZE, new SparseRAM(R824System.SYSTEM_RAM_SIZE));
+    mapRegion(VRAM_BASE, R824System.VRAM_SIZE, new VideoRAM(R824System.VRAM_SIZE));
+    mapRegion(0xF00000, 8, new RAM(8));  // Timer
+    mapRegion(0xF01000, TextDevice.SIZE, new RAM(TextDevice.SIZE));
+    mapRegion(0xF02000, VideoDevice.REGISTERS_SIZE, new RAM(VideoDevice.REGISTERS_SIZE));
+
+    Random random = new Random(1);
+    for (int i = 0; i < ACCESSES; i++) {
+      addresses[i] = (random.nextInt(4) != 0) ? random.nextInt(0x10000) : VRAM_BASE + random.nextInt(R824System.VRAM_SIZE);
+    }
+  }
+
+  private void mapRegion(int startAddress, int size, Memory memory) {
+    pageTable.mapRegion(startAddress, size, memory);
+    streamSearch.mapRegion(startAddress, size, memory);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public int pageTableRead() {
+    int sum = 0;
+    for (int address : addresses) {
+      sum += pageTable.read(address);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public int streamSearchRead() {
+    int sum = 0;
+    for (int address : addresses) {
+      sum += streamSearch.read(address);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public void pageTableWrite() {
+    for (int address : addresses) {
+      pageTable.write(address, (byte) address);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACCESSES)
+  public void streamSearchWrite() {
+    for (int address : addresses) {
+      streamSearch.write(address, (byte) address);
+    }
+  }
+
+  // The memory map before the page table, as it was: a stream over the regions per access
+  private static class StreamMemoryMap {
+    private record MemoryRegion(int startAddress, int size, Memory memory) {
+      boolean contains(int address) {
+        return address >= startAddress && address < startAddress + size;
+      }
+    }
+
+    private final Map<Integer, MemoryRegion> memoryRegions = new HashMap<>();
+
+    void mapRegion(int startAddress, int size, Memory memory) {
+      memoryRegions.put(startAddress, new MemoryRegion(startAddress, size, memory));
+    }
+
+    private MemoryRegion findRegion(int address) {
+      return memoryRegions.values().stream()
+          .filter(region -> region.contains(address))
+          .findFirst()
+          .orElseThrow(() -> new IllegalArgumentException("No memory region mapped for address: " + address));
+    }
+
+    byte read(int address) {
+      MemoryRegion region = findRegion(address);
+      return region.memory.read(address - region.startAddress);
+    }
+
+    void write(int address, byte value) {
+      MemoryRegion region = findRegion(address);
+      region.memory.write(address - region.startAddress, value);
+    }
+  }
+}
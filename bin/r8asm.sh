@@ -4,11 +4,11 @@
 SCRIPT_DIR=$(dirname "$(realpath "$0")")
 
 # Path to the JAR file based on the script's location
-JAR_FILE="$SCRIPT_DIR/../target/skyline-jar-with-dependencies.jar"
+JAR_FILE="$SCRIPT_DIR/../core/target/skyline-core-jar-with-dependencies.jar"
 
 # Check if the JAR file exists
 if [ ! -f "$JAR_FILE" ]; then
-  echo "Error: skyline-jar-with-dependencies.jar not found in $SCRIPT_DIR/../target."
+  echo "Error: skyline-core-jar-with-dependencies.jar not found in $SCRIPT_DIR/../core/target."
   echo "Please build the project with Maven or ensure the JAR file is in the correct location."
   exit 1
 fi
@@ -0,0 +1,24 @@
+#!/bin/bash
+
+# Determine the directory where this script is located
+SCRIPT_DIR=$(dirname "$(realpath "$0")")
+
+# Path to the JAR file based on the script's location
+JAR_FILE="$SCRIPT_DIR/../core/target/skyline-core-jar-with-dependencies.jar"
+
+# Check if the JAR file exists
+if [ ! -f "$JAR_FILE" ]; then
+  echo "Error: skyline-core-jar-with-dependencies.jar not found in $SCRIPT_DIR/../core/target."
+  echo "Please build the project with Maven or ensure the JAR file is in the correct location."
+  exit 1
+fi
+
+# Check if at least one argument (the program file) is provided
+if [ "$#" -lt 1 ]; then
+  echo "Usage: $0 <program.bin> [--load-address <addr>] [--max-cycles <n>] [--clock <hz>] [--mode <mode>]"
+  echo "Example: $0 system.bin --mode translated --max-cycles 100000000"
+  exit 1
+fi
+
+# Run the program headless, without JavaFX on the class path
+java -cp "$JAR_FILE" org.robincores.r8.runner.Main "$@"
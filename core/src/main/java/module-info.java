@@ -0,0 +1,11 @@
+module org.bytecraft.skyline.core {
+  requires com.google.gson;
+  requires org.objectweb.asm;
+
+
+  opens org.robincores.r8.assembler to com.google.gson;
+  exports org.robincores.r8.assembler;
+  exports org.robincores.r8.cpu;
+  exports org.robincores.r8.system;
+  exports org.robincores.r8.runner;
+}
@@ -0,0 +1,101 @@
+package org.robincores.r8.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Page-indexed store of translated blocks, keyed by their start address.
+ * <p>
+ * Besides the blocks themselves it keeps an execution counter per block leader, used
+ * to decide when a block is hot enough to translate, and a bitmap of the bytes covered
+ * by translated code, so that writes to plain data cost a single bit test.
+ * <p>
+ * A leader whose block was invalidated by a write is not translated again until the
+ * cache is cleared. Self-modifying code then runs predecoded instead of allocating a
+ * new block after every modification.
+ */
+final class BlockCache {
+  private static final int PAGE_SHIFT = DecodeCache.PAGE_SHIFT;
+  private static final int PAGE_MASK = DecodeCache.PAGE_MASK;
+  private static final int PAGE_COUNT = DecodeCache.PAGE_COUNT;
+
+  private final TranslatedBlock[][] blocks = new TranslatedBlock[PAGE_COUNT][];
+  private final int[][] counters = new int[PAGE_COUNT][];
+  private final long[][] coverage = new long[PAGE_COUNT][];
+
+  TranslatedBlock lookup(int address) {
+    TranslatedBlock[] page = blocks[address >>> PAGE_SHIFT];
+    return (page != null) ? page[address & PAGE_MASK] : null;
+  }
+
+  /**
+   * Counts one more entry into the block leader at the given address.
+   *
+   * @param address The 24-bit address of the block leader.
+   * @return The number of entries so far, including this one.
+   */
+  int countEntry(int address) {
+    int[] page = counters[address >>> PAGE_SHIFT];
+    if (page == null) {
+      page = counters[address >>> PAGE_SHIFT] = new int[DecodeCache.PAGE_SIZE];
+    }
+    return ++page[address & PAGE_MASK];
+  }
+
+  void store(TranslatedBlock block) {
+    int start = block.startAddress;
+    TranslatedBlock[] page = blocks[start >>> PAGE_SHIFT];
+    if (page == null) {
+      page = blocks[start >>> PAGE_SHIFT] = new TranslatedBlock[DecodeCache.PAGE_SIZE];
+    }
+    page[start & PAGE_MASK] = block;
+
+    // Mark the code bytes of the block so writes to them can be detected
+    for (int a = start; a != block.endAddress(); a = (a + 1) & 0xFF_FFFF) {
+      long[] bits = coverage[a >>> PAGE_SHIFT];
+      if (bits == null) {
+        bits = coverage[a >>> PAGE_SHIFT] = new long[DecodeCache.PAGE_SIZE / 64];
+      }
+      bits[(a & PAGE_MASK) >>> 6] |= 1L << a;
+    }
+  }
+
+  /**
+   * Invalidates every block whose code includes the given address.
+   *
+   * @param address The address that was written.
+   */
+  void invalidate(int address) {
+    long[] bits = coverage[address >>> PAGE_SHIFT];
+    if (bits == null || (bits[(address & PAGE_MASK) >>> 6] & (1L << address)) == 0) {
+      return;  // Not code
+    }
+
+    for (int i = 0; i < TranslatedBlock.MAX_BYTES; i++) {
+      int start = (address - i) & 0xFF_FFFF;
+      TranslatedBlock[] page = blocks[start >>> PAGE_SHIFT];
+      if (page != null) {
+        TranslatedBlock block = page[start & PAGE_MASK];
+        if (block != null && block.covers(address)) {
+          block.valid = false;
+          page[start & PAGE_MASK] = null;
+          counters[start >>> PAGE_SHIFT][start & PAGE_MASK] = Integer.MIN_VALUE;
+        }
+      }
+    }
+  }
+
+  void clear() {
+    for (TranslatedBlock[] page : blocks) {
+      if (page != null) {
+        for (TranslatedBlock block : page) {
+          if (block != null) {
+            block.valid = false;
+          }
+        }
+      }
+    }
+    Arrays.fill(blocks, null);
+    Arrays.fill(counters, null);
+    Arrays.fill(coverage, null);
+  }
+}
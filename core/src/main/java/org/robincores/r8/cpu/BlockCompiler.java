@@ -0,0 +1,619 @@
+package org.robincores.r8.cpu;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Compiles translated blocks into JVM bytecode, one hidden class per block, so HotSpot
+ * compiles hot guest code like any other Java method.
+ * <p>
+ * A compiled block is straight-line code with the guest instructions' addresses, cycle
+ * counts and operands as constants. AReg, BReg, CReg and the workspace registers the
+ * block uses are loaded into JVM locals on entry and written back at its exits: at the
+ * end of the block, after a store that invalidated it or moved the run deadline
+ * forward, and around instructions handed to the interpreter. The classes are defined
+ * as nestmates of R824, so they access its private state and memory helpers directly.
+ * A hidden class is unloaded once its block is dropped.
+ */
+final class BlockCompiler implements Opcodes {
+  private static final String CPU = Type.getInternalName(R824.class);
+  private static final String BLOCK = Type.getInternalName(TranslatedBlock.class);
+  private static final String CODE = Type.getInternalName(TranslatedBlock.Code.class);
+  private static final String CLASS_NAME = CPU + "$CompiledBlock";
+
+  private static final int MASK = 0xFF_FFFF;
+
+  // Locals of the generated run(R824, TranslatedBlock) method
+  private static final int L_CPU = 1;
+  private static final int L_BLOCK = 2;
+  private static final int L_A = 3;
+  private static final int L_B = 4;
+  private static final int L_C = 5;
+  private static final int L_T = 6;
+  private static final int L_IP = 7;      // Target of JR and JALR
+  private static final int L_START = 8;   // Cycle count on entry, a long
+  private static final int L_W = 10;      // Workspace register k lives in L_W + k
+
+  private final MethodHandles.Lookup lookup;
+
+  /**
+   * @param lookup A full-privilege lookup on R824, which the blocks become nestmates of.
+   */
+  BlockCompiler(MethodHandles.Lookup lookup) {
+    this.lookup = lookup;
+  }
+
+  /**
+   * Compiles a block into a new hidden class.
+   *
+   * @param block The block to compile.
+   * @return The compiled code of the block.
+   */
+  TranslatedBlock.Code compile(TranslatedBlock block) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+    writer.visit(V21, ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, CLASS_NAME, null, "java/lang/Object",
+        new String[]{CODE});
+
+    MethodVisitor constructor = writer.visitMethod(0, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(ALOAD, 0);
+    constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    constructor.visitInsn(RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    MethodVisitor method = writer.visitMethod(ACC_PUBLIC | ACC_FINAL, "run",
+        "(L" + CPU + ";L" + BLOCK + ";)V", null, null);
+    method.visitCode();
+    new Emitter(method, block).emitBlock();
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    writer.visitEnd();
+
+    try {
+      Class<?> compiled = lookup.defineHiddenClass(writer.toByteArray(), true, MethodHandles.Lookup.ClassOption.NESTMATE)
+          .lookupClass();
+      return (TranslatedBlock.Code) lookup.findConstructor(compiled, MethodType.methodType(void.class)).invoke();
+    } catch (Throwable e) {
+      throw new IllegalStateException("Cannot compile the block at " + Integer.toHexString(block.startAddress), e);
+    }
+  }
+
+  // Generates the body of one block
+  private static final class Emitter {
+    private final MethodVisitor mv;
+    private final TranslatedBlock block;
+    private final int last;
+    private final boolean[] usedRegisters = new boolean[16];
+    private final boolean[] storedRegisters = new boolean[16];
+
+    Emitter(MethodVisitor mv, TranslatedBlock block) {
+      this.mv = mv;
+      this.block = block;
+      this.last = block.code.length - 1;
+
+      for (int i = 0; i <= last; i++) {
+        switch (block.code[i] & 0xFF) {
+          case TranslatedBlock.UOP_LDL -> usedRegisters[block.operands[i]] = true;
+          case TranslatedBlock.UOP_STL -> usedRegisters[block.operands[i]] = storedRegisters[block.operands[i]] = true;
+          case TranslatedBlock.UOP_POP, TranslatedBlock.UOP_PUSH -> usedRegisters[15] = storedRegisters[15] = true;
+        }
+      }
+    }
+
+    void emitBlock() {
+      // Load the registers into locals
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, "cycleCount", "J");
+      mv.visitVarInsn(LSTORE, L_START);
+      loadStackRegisters();
+      loadWorkspace();
+
+      for (int i = 0; i <= last; i++) {
+        emitInstruction(i);
+      }
+    }
+
+    private void emitInstruction(int i) {
+      int opcode = block.code[i] >>> 8;
+      int k = block.operands[i];
+      int ip = block.nextAddress[i];
+
+      switch (block.code[i] & 0xFF) {
+        case TranslatedBlock.UOP_NOP -> { }
+        case TranslatedBlock.UOP_DUP -> {
+          move(L_B, L_C);
+          move(L_A, L_B);
+        }
+        case TranslatedBlock.UOP_SWAP -> {
+          move(L_B, L_T);
+          move(L_A, L_B);
+          move(L_T, L_A);
+        }
+        case TranslatedBlock.UOP_ADD -> binary(IADD, true);
+        case TranslatedBlock.UOP_SUB -> binary(ISUB, true);
+        case TranslatedBlock.UOP_MUL -> binary(IMUL, true);
+        case TranslatedBlock.UOP_AND -> binary(IAND, false);
+        case TranslatedBlock.UOP_OR -> binary(IOR, false);
+        case TranslatedBlock.UOP_XOR -> binary(IXOR, false);
+        case TranslatedBlock.UOP_SLL -> shift(ISHL, k);
+        case TranslatedBlock.UOP_SRL -> shift(IUSHR, k);
+        case TranslatedBlock.UOP_SRA -> {
+          // a = signExtend24to32((a >> k) | (a & 0x80_0000))
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_A);
+          push(k);
+          mv.visitInsn(ISHR);
+          mv.visitVarInsn(ILOAD, L_A);
+          push(0x80_0000);
+          mv.visitInsn(IAND);
+          mv.visitInsn(IOR);
+          signExtend24();
+          mv.visitVarInsn(ISTORE, L_A);
+        }
+        case TranslatedBlock.UOP_INC -> unary(() -> {
+          mv.visitInsn(ICONST_1);
+          mv.visitInsn(IADD);
+        });
+        case TranslatedBlock.UOP_DEC -> unary(() -> {
+          mv.visitInsn(ICONST_1);
+          mv.visitInsn(ISUB);
+        });
+        case TranslatedBlock.UOP_NEG -> unary(() -> mv.visitInsn(INEG));
+        case TranslatedBlock.UOP_INV -> unary(() -> {
+          mv.visitInsn(ICONST_M1);
+          mv.visitInsn(IXOR);
+        });
+        case TranslatedBlock.UOP_I2B -> {
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_A);
+          push(0xFF);
+          mv.visitInsn(IAND);
+          mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "signExtend8to32", "(I)I", false);
+          mv.visitVarInsn(ISTORE, L_A);
+        }
+        case TranslatedBlock.UOP_SLT -> compare(false);
+        case TranslatedBlock.UOP_SLTU -> compare(true);
+        case TranslatedBlock.UOP_POP1 -> {
+          move(L_B, L_A);
+          move(L_C, L_B);
+        }
+        case TranslatedBlock.UOP_POP2 -> {
+          move(L_C, L_B);
+          move(L_C, L_A);
+        }
+        case TranslatedBlock.UOP_LD -> {
+          setCycleCount(i);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_A);
+          mask();
+          read24();
+          signExtend24();
+          mv.visitVarInsn(ISTORE, L_A);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_POP -> {
+          setCycleCount(i);
+          move(L_B, L_C);
+          move(L_A, L_B);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_W + 15);
+          mask();
+          read24();
+          signExtend24();
+          mv.visitVarInsn(ISTORE, L_A);
+          mv.visitVarInsn(ILOAD, L_W + 15);
+          push(3);
+          mv.visitInsn(IADD);
+          mask();
+          mv.visitVarInsn(ISTORE, L_W + 15);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_PUSH -> {
+          setCycleCount(i);
+          mv.visitVarInsn(ILOAD, L_W + 15);
+          push(3);
+          mv.visitInsn(ISUB);
+          mask();
+          mv.visitVarInsn(ISTORE, L_W + 15);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_W + 15);
+          mv.visitVarInsn(ILOAD, L_A);
+          write24();
+          move(L_B, L_A);
+          move(L_C, L_B);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_ST -> {
+          setCycleCount(i);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_B);
+          mask();
+          mv.visitVarInsn(ILOAD, L_A);
+          write24();
+          move(L_B, L_A);
+          move(L_C, L_B);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_LB, TranslatedBlock.UOP_LU -> {
+          setCycleCount(i);
+          move(L_B, L_C);
+          move(L_A, L_B);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_A);
+          mask();
+          mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "readByte", "(I)B", false);
+          if ((block.code[i] & 0xFF) == TranslatedBlock.UOP_LU) {
+            push(0xFF);
+            mv.visitInsn(IAND);
+          }
+          mv.visitVarInsn(ISTORE, L_A);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_SB -> {
+          setCycleCount(i);
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitVarInsn(ILOAD, L_B);
+          mask();
+          mv.visitVarInsn(ILOAD, L_A);
+          mv.visitInsn(I2B);
+          mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "writeByte", "(IB)V", false);
+          move(L_B, L_A);
+          move(L_C, L_B);
+          checkAfterAccess(i);
+        }
+        case TranslatedBlock.UOP_LDK -> {
+          move(L_B, L_C);
+          move(L_A, L_B);
+          setA(k);
+        }
+        case TranslatedBlock.UOP_IMM -> {
+          move(L_A, L_B);
+          move(L_B, L_C);
+          setA(k);
+        }
+        case TranslatedBlock.UOP_AIIP -> {
+          move(L_A, L_B);
+          move(L_B, L_C);
+          setA(signExtend24to32((ip + k) & MASK));
+        }
+        case TranslatedBlock.UOP_LDL -> {
+          move(L_B, L_C);
+          move(L_A, L_B);
+          move(L_W + k, L_A);
+        }
+        case TranslatedBlock.UOP_STL -> {
+          move(L_A, L_W + k);
+          move(L_B, L_A);
+          move(L_C, L_B);
+        }
+        case TranslatedBlock.UOP_BEQ -> branch(i, IF_ICMPEQ, false, k);
+        case TranslatedBlock.UOP_BNE -> branch(i, IF_ICMPNE, false, k);
+        case TranslatedBlock.UOP_BLT -> branch(i, IF_ICMPLT, false, k);
+        case TranslatedBlock.UOP_BGE -> branch(i, IF_ICMPGE, false, k);
+        case TranslatedBlock.UOP_BLTU -> branch(i, IFLT, true, k);
+        case TranslatedBlock.UOP_BGEU -> branch(i, IFGE, true, k);
+        case TranslatedBlock.UOP_J -> {
+          exit(i, (ip + k) & MASK);
+          return;
+        }
+        case TranslatedBlock.UOP_JAL -> {
+          setA(ip);
+          exit(i, (ip + k) & MASK);
+          return;
+        }
+        case TranslatedBlock.UOP_JR -> {
+          mv.visitVarInsn(ILOAD, L_A);
+          mask();
+          mv.visitVarInsn(ISTORE, L_IP);
+          move(L_B, L_A);
+          move(L_C, L_B);
+          exitTo(i, () -> mv.visitVarInsn(ILOAD, L_IP));
+          return;
+        }
+        case TranslatedBlock.UOP_JALR -> {
+          mv.visitVarInsn(ILOAD, L_A);
+          mask();
+          mv.visitVarInsn(ISTORE, L_IP);
+          setA(ip);
+          exitTo(i, () -> mv.visitVarInsn(ILOAD, L_IP));
+          return;
+        }
+        default -> {
+          fallback(i, opcode, k, ip);
+          return;
+        }
+      }
+
+      if (i == last) {
+        exit(i, ip);
+      }
+    }
+
+    // Hands one instruction to the interpreter with all registers in the CPU
+    private void fallback(int i, int opcode, int k, int ip) {
+      storeStackRegisters();
+      storeWorkspace(usedRegisters);
+      mv.visitVarInsn(ALOAD, L_CPU);
+      push(ip);
+      mv.visitFieldInsn(PUTFIELD, CPU, "IPtr", "I");
+      setCycleCount(i);
+      mv.visitVarInsn(ALOAD, L_CPU);
+      push(opcode);
+      push(k);
+      mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "decodeAndExecute", "(II)V", false);
+
+      if (i == last) {
+        finish(i);  // The registers are already in the CPU
+        return;
+      }
+
+      // Control was transferred, or an interrupt may have to be taken
+      Label leave = new Label();
+      Label resume = new Label();
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, "IPtr", "I");
+      push(ip);
+      mv.visitJumpInsn(IF_ICMPNE, leave);
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, "attention", "Z");
+      mv.visitJumpInsn(IFNE, leave);
+      checkDeadline(i, leave);
+
+      // Carry on with the registers as the instruction left them
+      loadStackRegisters();
+      loadWorkspace();
+      mv.visitJumpInsn(GOTO, resume);
+      mv.visitLabel(leave);
+      finish(i);
+      mv.visitLabel(resume);
+    }
+
+    private void branch(int i, int condition, boolean unsigned, int k) {
+      int ip = block.nextAddress[i];
+      Label taken = new Label();
+      mv.visitVarInsn(ILOAD, L_B);
+      mv.visitVarInsn(ILOAD, L_A);
+      if (unsigned) {
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "compareUnsigned", "(II)I", false);
+      }
+      mv.visitJumpInsn(condition, taken);
+      move(L_C, L_A);
+      exit(i, ip);
+      mv.visitLabel(taken);
+      move(L_C, L_A);
+      exit(i, (ip + k) & MASK);
+    }
+
+    // A store into the block's own code, or an access to a device that moved the run
+    // deadline forward or raised an interrupt, ends the block after the instruction
+    private void checkAfterAccess(int i) {
+      if (i == last) {
+        return;
+      }
+      Label leave = new Label();
+      Label resume = new Label();
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, "attention", "Z");
+      mv.visitJumpInsn(IFNE, leave);
+      checkDeadline(i, leave);
+      mv.visitJumpInsn(GOTO, resume);
+      mv.visitLabel(leave);
+      exit(i, block.nextAddress[i]);
+      mv.visitLabel(resume);
+    }
+
+    // Jumps to leave if the block is invalid or the run ends after instruction i; falls
+    // through otherwise
+    private void checkDeadline(int i, Label leave) {
+      mv.visitVarInsn(ALOAD, L_BLOCK);
+      mv.visitFieldInsn(GETFIELD, BLOCK, "valid", "Z");
+      mv.visitJumpInsn(IFEQ, leave);
+      mv.visitVarInsn(LLOAD, L_START);
+      mv.visitLdcInsn((long) block.cycles[i + 1]);
+      mv.visitInsn(LADD);
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, "cycleDeadline", "J");
+      mv.visitInsn(LCMP);
+      mv.visitJumpInsn(IFGE, leave);
+    }
+
+    private void exit(int i, int ip) {
+      exitTo(i, () -> push(ip));
+    }
+
+    // Writes the registers back and leaves the block after instruction i
+    private void exitTo(int i, Runnable pushIp) {
+      storeStackRegisters();
+      storeWorkspace(storedRegisters);
+      mv.visitVarInsn(ALOAD, L_CPU);
+      pushIp.run();
+      mv.visitFieldInsn(PUTFIELD, CPU, "IPtr", "I");
+      finish(i);
+    }
+
+    // Accounts for the instructions up to i and returns
+    private void finish(int i) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitVarInsn(LLOAD, L_START);
+      mv.visitLdcInsn((long) block.cycles[i + 1]);
+      mv.visitInsn(LADD);
+      mv.visitFieldInsn(PUTFIELD, CPU, "cycleCount", "J");
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitInsn(DUP);
+      mv.visitFieldInsn(GETFIELD, CPU, "instructionCount", "J");
+      mv.visitLdcInsn((long) (i + 1));
+      mv.visitInsn(LADD);
+      mv.visitFieldInsn(PUTFIELD, CPU, "instructionCount", "J");
+      mv.visitInsn(RETURN);
+    }
+
+    private void setCycleCount(int i) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitVarInsn(LLOAD, L_START);
+      mv.visitLdcInsn((long) block.cycles[i]);
+      mv.visitInsn(LADD);
+      mv.visitFieldInsn(PUTFIELD, CPU, "cycleCount", "J");
+    }
+
+    private void loadStackRegisters() {
+      loadField("AReg", L_A);
+      loadField("BReg", L_B);
+      loadField("CReg", L_C);
+    }
+
+    private void storeStackRegisters() {
+      storeField(L_A, "AReg");
+      storeField(L_B, "BReg");
+      storeField(L_C, "CReg");
+    }
+
+    private void loadWorkspace() {
+      for (int k = 0; k < 16; k++) {
+        if (usedRegisters[k]) {
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitFieldInsn(GETFIELD, CPU, "wksp", "[I");
+          push(k);
+          mv.visitInsn(IALOAD);
+          mv.visitVarInsn(ISTORE, L_W + k);
+        }
+      }
+    }
+
+    private void storeWorkspace(boolean[] registers) {
+      for (int k = 0; k < 16; k++) {
+        if (registers[k]) {
+          mv.visitVarInsn(ALOAD, L_CPU);
+          mv.visitFieldInsn(GETFIELD, CPU, "wksp", "[I");
+          push(k);
+          mv.visitVarInsn(ILOAD, L_W + k);
+          mv.visitInsn(IASTORE);
+        }
+      }
+    }
+
+    private void loadField(String field, int local) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitFieldInsn(GETFIELD, CPU, field, "I");
+      mv.visitVarInsn(ISTORE, local);
+    }
+
+    private void storeField(int local, String field) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitVarInsn(ILOAD, local);
+      mv.visitFieldInsn(PUTFIELD, CPU, field, "I");
+    }
+
+    // a = (b op a) & 0xFF_FFFF, sign-extended for arithmetic; b = c
+    private void binary(int operation, boolean signed) {
+      if (signed) {
+        mv.visitVarInsn(ALOAD, L_CPU);
+      }
+      mv.visitVarInsn(ILOAD, L_B);
+      mv.visitVarInsn(ILOAD, L_A);
+      mv.visitInsn(operation);
+      mask();
+      if (signed) {
+        signExtend24();
+      }
+      mv.visitVarInsn(ISTORE, L_A);
+      move(L_C, L_B);
+    }
+
+    // a = signExtend24to32((a op k) & 0xFF_FFFF)
+    private void shift(int operation, int k) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitVarInsn(ILOAD, L_A);
+      push(k);
+      mv.visitInsn(operation);
+      mask();
+      signExtend24();
+      mv.visitVarInsn(ISTORE, L_A);
+    }
+
+    // a = signExtend24to32(op(a) & 0xFF_FFFF)
+    private void unary(Runnable operation) {
+      mv.visitVarInsn(ALOAD, L_CPU);
+      mv.visitVarInsn(ILOAD, L_A);
+      operation.run();
+      mask();
+      signExtend24();
+      mv.visitVarInsn(ISTORE, L_A);
+    }
+
+    // a = (b < a) ? 1 : 0, signed or unsigned; b = c
+    private void compare(boolean unsigned) {
+      Label less = new Label();
+      Label done = new Label();
+      mv.visitVarInsn(ILOAD, L_B);
+      mv.visitVarInsn(ILOAD, L_A);
+      if (unsigned) {
+        mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "compareUnsigned", "(II)I", false);
+        mv.visitJumpInsn(IFLT, less);
+      } else {
+        mv.visitJumpInsn(IF_ICMPLT, less);
+      }
+      mv.visitInsn(ICONST_0);
+      mv.visitJumpInsn(GOTO, done);
+      mv.visitLabel(less);
+      mv.visitInsn(ICONST_1);
+      mv.visitLabel(done);
+      mv.visitVarInsn(ISTORE, L_A);
+      move(L_C, L_B);
+    }
+
+    private void move(int from, int to) {
+      mv.visitVarInsn(ILOAD, from);
+      mv.visitVarInsn(ISTORE, to);
+    }
+
+    private void setA(int value) {
+      push(value);
+      mv.visitVarInsn(ISTORE, L_A);
+    }
+
+    private void mask() {
+      push(MASK);
+      mv.visitInsn(IAND);
+    }
+
+    // Expects the CPU below the value on the stack
+    private void signExtend24() {
+      mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "signExtend24to32", "(I)I", false);
+    }
+
+    // Expects the CPU and the address on the stack
+    private void read24() {
+      mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "read24BitValueFromMemory", "(I)I", false);
+    }
+
+    // Expects the CPU, the address and the value on the stack
+    private void write24() {
+      mv.visitMethodInsn(INVOKEVIRTUAL, CPU, "write24BitValueToMemory", "(II)V", false);
+    }
+
+    private void push(int value) {
+      if (value >= -1 && value <= 5) {
+        mv.visitInsn(ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        mv.visitIntInsn(BIPUSH, value);
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        mv.visitIntInsn(SIPUSH, value);
+      } else {
+        mv.visitLdcInsn(value);
+      }
+    }
+
+    private static int signExtend24to32(int value) {
+      return ((value & 0x80_0000) != 0) ? value | 0xFF00_0000 : value;
+    }
+  }
+}
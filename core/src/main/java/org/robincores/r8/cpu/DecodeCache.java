@@ -0,0 +1,104 @@
+package org.robincores.r8.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Page-indexed cache of decoded R824 instructions.
+ * <p>
+ * Every instruction address maps to one packed {@code long} entry, so a cache hit costs
+ * two array loads and no allocation:
+ * <pre>
+ *   bits  0..31  operand (already sign-extended as the handler expects it)
+ *   bits 32..43  handler id (the opcode, or a fused handler id above 0xFF)
+ *   bits 44..47  instruction length in bytes
+ *   bits 48..55  cycle cost
+ *   bits 56..63  cycles before the last instruction of a fused sequence, 0 otherwise
+ * </pre>
+ * An entry of 0 means "not decoded"; a valid entry always has a non-zero length.
+ * Pages are allocated the first time an instruction within them is decoded.
+ */
+final class DecodeCache {
+  static final int PAGE_SHIFT = 12;                 // 4KB pages
+  static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  static final int PAGE_MASK = PAGE_SIZE - 1;
+  static final int PAGE_COUNT = 1 << (24 - PAGE_SHIFT);
+
+  // The longest decoded instruction or fused sequence in bytes; a write can affect entries
+  // up to this far back.
+  static final int MAX_SPAN = 5;
+
+  private final long[][] pages = new long[PAGE_COUNT][];
+
+  static long entry(int handler, int operand, int length, int cycles) {
+    return entry(handler, operand, length, cycles, 0);
+  }
+
+  static long entry(int handler, int operand, int length, int cycles, int leadCycles) {
+    return (operand & 0xFFFF_FFFFL)
+        | ((long) handler << 32)
+        | ((long) length << 44)
+        | ((long) cycles << 48)
+        | ((long) leadCycles << 56);
+  }
+
+  static int operand(long entry) {
+    return (int) entry;
+  }
+
+  static int handler(long entry) {
+    return (int) (entry >>> 32) & 0xFFF;
+  }
+
+  static int length(long entry) {
+    return (int) (entry >>> 44) & 0xF;
+  }
+
+  static int cycles(long entry) {
+    return (int) (entry >>> 48) & 0xFF;
+  }
+
+  static int leadCycles(long entry) {
+    return (int) (entry >>> 56);
+  }
+
+  /**
+   * Returns the decoded entry for the instruction at the given address.
+   *
+   * @param address The 24-bit instruction address.
+   * @return The packed entry, or 0 if the address has not been decoded.
+   */
+  long lookup(int address) {
+    long[] page = pages[address >>> PAGE_SHIFT];
+    return (page != null) ? page[address & PAGE_MASK] : 0;
+  }
+
+  void store(int address, long entry) {
+    long[] page = pages[address >>> PAGE_SHIFT];
+    if (page == null) {
+      page = pages[address >>> PAGE_SHIFT] = new long[PAGE_SIZE];
+    }
+    page[address & PAGE_MASK] = entry;
+  }
+
+  /**
+   * Drops every entry whose instruction bytes may include the given address.
+   *
+   * @param address The address that was written.
+   */
+  void invalidate(int address) {
+    for (int i = 0; i < MAX_SPAN; i++) {
+      int a = (address - i) & 0xFF_FFFF;
+      long[] page = pages[a >>> PAGE_SHIFT];
+      if (page != null) {
+        page[a & PAGE_MASK] = 0;
+      }
+    }
+  }
+
+  /**
+   * Drops all decoded instructions, e.g. after memory was changed behind the CPU's back.
+   */
+  void clear() {
+    Arrays.fill(pages, null);
+  }
+}
@@ -0,0 +1,47 @@
+package org.robincores.r8.cpu;
+
+/**
+ * A memory that exposes the byte arrays backing its plain RAM and ROM pages, so the CPU
+ * can access them inline instead of dispatching every byte through read() and write().
+ * <p>
+ * The tables are indexed by {@code address >>> PAGE_SHIFT} and are updated in place when
+ * the mapping changes, so they only need to be fetched once. The byte for an address
+ * lives at {@code array[address - pageBases()[page]]}; a null array means the page has
+ * to be accessed through the Memory methods, e.g. because it belongs to a device.
+ * <p>
+ * Some pages record which blocks of {@code 1 << DIRTY_BLOCK_SHIFT} bytes are written,
+ * e.g. for a display. A direct write to such a page sets the bit of its block in the
+ * page's bitset: bit {@code b % 64} of word {@code b / 64}, where
+ * {@code b = (address - dirtyBases()[page]) >>> DIRTY_BLOCK_SHIFT}.
+ */
+public interface DirectMemory extends Memory {
+  int PAGE_SHIFT = 12;
+  int PAGE_COUNT = 1 << (24 - PAGE_SHIFT);
+  int DIRTY_BLOCK_SHIFT = 8;
+
+  /**
+   * @return The arrays that may be read directly, one entry per page.
+   */
+  byte[][] readPages();
+
+  /**
+   * @return The arrays that may be written directly, one entry per page.
+   */
+  byte[][] writePages();
+
+  /**
+   * @return The address that maps to index 0 of each page's array.
+   */
+  int[] pageBases();
+
+  /**
+   * @return The dirty-block bitset of each page whose writes are recorded, or null for
+   * pages that are not.
+   */
+  long[][] dirtyBitsets();
+
+  /**
+   * @return The address that maps to block 0 of each page's dirty-block bitset.
+   */
+  int[] dirtyBases();
+}
@@ -0,0 +1,25 @@
+package org.robincores.r8.cpu;
+
+/**
+ * Selects the instruction fetch/decode strategy of the R824 CPU.
+ */
+public enum ExecutionMode {
+  /**
+   * Fetches and decodes every instruction from memory each time it is executed.
+   */
+  INTERPRETER,
+
+  /**
+   * Decodes each instruction address once and executes from a page-indexed decode cache.
+   * Cached entries are dropped when the CPU writes to the bytes they were decoded from.
+   */
+  PREDECODED,
+
+  /**
+   * Translates hot basic blocks into micro-op sequences, and the blocks that keep running
+   * into JVM bytecode in hidden classes, with the registers held in locals and blocks
+   * chained to their known successors. Code that is not hot yet is executed from the
+   * decode cache as in {@link #PREDECODED}.
+   */
+  TRANSLATED
+}
@@ -0,0 +1,32 @@
+package org.robincores.r8.cpu;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Allocation-free access to little-endian 24-bit values in byte arrays, shared by the
+ * CPU's direct memory path and the array-backed Memory implementations.
+ */
+public final class LittleEndian {
+  private static final VarHandle SHORT =
+      MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private LittleEndian() {
+  }
+
+  /**
+   * @return The 24-bit value at the given index, zero-extended.
+   */
+  public static int read24(byte[] array, int index) {
+    return ((short) SHORT.get(array, index) & 0xFFFF) | (array[index + 2] & 0xFF) << 16;
+  }
+
+  /**
+   * Stores the lower 24 bits of a value at the given index.
+   */
+  public static void write24(byte[] array, int index, int value) {
+    SHORT.set(array, index, (short) value);
+    array[index + 2] = (byte) (value >> 16);
+  }
+}
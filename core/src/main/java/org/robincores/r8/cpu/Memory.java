@@ -0,0 +1,58 @@
+package org.robincores.r8.cpu;
+
+public interface Memory {
+  byte read(int address);
+  void write(int address, byte value);
+
+  /**
+   * Reads a little-endian 24-bit value.
+   *
+   * @param address The address of the least significant byte.
+   * @return The value in the lower 24 bits, zero-extended.
+   */
+  default int read24(int address) {
+    return (read(address) & 0xFF)
+        | (read(address + 1) & 0xFF) << 8
+        | (read(address + 2) & 0xFF) << 16;
+  }
+
+  /**
+   * Writes the lower 24 bits of a value in little-endian order.
+   *
+   * @param address The address of the least significant byte.
+   * @param value   The value to write.
+   */
+  default void write24(int address, int value) {
+    write(address, (byte) value);
+    write(address + 1, (byte) (value >> 8));
+    write(address + 2, (byte) (value >> 16));
+  }
+
+  /**
+   * Copies consecutive bytes from memory into a buffer.
+   *
+   * @param address The first address to read.
+   * @param buffer  The buffer to fill.
+   * @param offset  The index in the buffer of the first byte.
+   * @param length  The number of bytes to copy.
+   */
+  default void readBlock(int address, byte[] buffer, int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      buffer[offset + i] = read(address + i);
+    }
+  }
+
+  /**
+   * Copies consecutive bytes from a buffer into memory.
+   *
+   * @param address The first address to write.
+   * @param buffer  The buffer holding the data.
+   * @param offset  The index in the buffer of the first byte.
+   * @param length  The number of bytes to copy.
+   */
+  default void writeBlock(int address, byte[] buffer, int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      write(address + i, buffer[offset + i]);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package org.robincores.r8.cpu;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts the opcode bigrams and trigrams executed by an R824, to find instruction
+ * sequences worth fusing into a single handler.
+ * <p>
+ * Install it with {@link R824#setProfiler(OpcodeProfiler)}. Sequences are counted in
+ * execution order, so they follow taken branches and interrupt entries; instructions
+ * run from translated blocks are not seen.
+ */
+public final class OpcodeProfiler {
+  private final long[] bigrams = new long[1 << 16];
+  private final long[][] trigrams = new long[1 << 16][];  // Indexed by the leading bigram
+
+  private int history;    // The last two opcodes, most recent in the low byte
+  private long executed;  // Instructions recorded since the last reset
+
+  void record(int opcode) {
+    if (executed >= 2) {
+      long[] counts = trigrams[history];
+      if (counts == null) {
+        counts = trigrams[history] = new long[256];
+      }
+      counts[opcode]++;
+    }
+    if (executed >= 1) {
+      bigrams[((history & 0xFF) << 8) | opcode]++;
+    }
+    history = ((history << 8) | opcode) & 0xFFFF;
+    executed++;
+  }
+
+  public long getExecuted() {
+    return executed;
+  }
+
+  public long bigramCount(int first, int second) {
+    return bigrams[(first << 8) | second];
+  }
+
+  public long trigramCount(int first, int second, int third) {
+    long[] counts = trigrams[(first << 8) | second];
+    return (counts != null) ? counts[third] : 0;
+  }
+
+  public void reset() {
+    Arrays.fill(bigrams, 0);
+    Arrays.fill(trigrams, null);
+    history = 0;
+    executed = 0;
+  }
+
+  /**
+   * Prints the most frequent bigrams and trigrams with their share of all executed
+   * instructions.
+   *
+   * @param out   The stream to print to.
+   * @param limit The number of sequences to print for each length.
+   */
+  public void printReport(PrintStream out, int limit) {
+    out.printf("%d instructions%n", executed);
+
+    out.println("Top bigrams:");
+    List<long[]> top = new ArrayList<>();
+    for (int i = 0; i < bigrams.length; i++) {
+      if (bigrams[i] != 0) {
+        top.add(new long[]{bigrams[i], i});
+      }
+    }
+    printTop(out, top, limit, 2);
+
+    out.println("Top trigrams:");
+    top.clear();
+    for (int i = 0; i < trigrams.length; i++) {
+      if (trigrams[i] != null) {
+        for (int j = 0; j < 256; j++) {
+          if (trigrams[i][j] != 0) {
+            top.add(new long[]{trigrams[i][j], (i << 8) | j});
+          }
+        }
+      }
+    }
+    printTop(out, top, limit, 3);
+  }
+
+  private void printTop(PrintStream out, List<long[]> sequences, int limit, int length) {
+    sequences.sort((a, b) -> Long.compare(b[0], a[0]));
+    for (int i = 0; i < Math.min(limit, sequences.size()); i++) {
+      long count = sequences.get(i)[0];
+      int opcodes = (int) sequences.get(i)[1];
+
+      StringBuilder line = new StringBuilder();
+      for (int shift = 8 * (length - 1); shift >= 0; shift -= 8) {
+        line.append(String.format(" %02x", (opcodes >>> shift) & 0xFF));
+      }
+      out.printf("  %12d %6.2f%% %s%n", count, 100.0 * count / Math.max(1, executed), line);
+    }
+  }
+}
@@ -0,0 +1,1789 @@
+package org.robincores.r8.cpu;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class R824 {
+
+  // Define interrupt bitmasks
+  public static final int SOFTWARE_INTERRUPT_MASK = 0x01;     // Bit 0: This has the highest priority.
+  public static final int TIMER_INTERRUPT_MASK = 0x02;        // Bit 1: Second highest.
+  public static final int EXTERNAL_INTERRUPT_MASK = 0x04;     // Bit 2: Third highest.
+  public static final int DIV_ZERO_INTERRUPT_MASK = 0x08;     // Bit 3: Fourth highest.
+  public static final int SYSTEM_CALL_INTERRUPT_MASK = 0x10;  // Bit 4: Lowest priority.
+
+  /**
+   * Machine Trap-Vector Base Address (MTVEC):
+   * This register holds the base address of the trap/interrupt vector table.
+   * It is used to determine the address where the CPU should jump when a trap or interrupt occurs.
+   * In this case, MTVEC is set to address 0x00_0002, which is where the interrupt vector table begins.
+   */
+  private static final int MTVEC = 0x00_0002;
+
+  private static final int S_IFETCH = 1; // cycles
+  private static final int S_DECODE = 1;
+  private static final int S_MEM_READ = 1;
+  private static final int S_MEM_WRITE = 1;
+
+  // Operand encodings, see operandType()
+  static final int OPERAND_NONE = 0;
+  static final int OPERAND_IMM8 = 1;   // Unsigned 8-bit immediate
+  static final int OPERAND_REL8 = 2;   // Signed 8-bit immediate or branch offset
+  static final int OPERAND_IMM24 = 3;  // Signed 24-bit immediate
+
+  // Handler groups, see handlerGroup()
+  private static final int H_NOP = 0;
+  private static final int H_LDL = 1;
+  private static final int H_STL = 2;
+  private static final int H_STACK = 3;
+  private static final int H_ALU = 4;
+  private static final int H_UNARY = 5;
+  private static final int H_IMMEDIATE = 6;
+  private static final int H_MEMORY = 7;
+  private static final int H_BRANCH = 8;
+  private static final int H_JUMP = 9;
+  private static final int H_SYSTEM = 10;
+
+  // Fused handlers for common instruction sequences, see fuseAt(). Their ids follow the
+  // opcodes so they share the decode cache entry format.
+  private static final int F_LDL_PUSH = 0x100;   // LDL @n; PUSH
+  private static final int F_POP_STL = 0x101;    // POP; STL @n
+  private static final int F_I_ST = 0x102;       // I w; ST
+  private static final int F_LDL_B_ADD = 0x103;  // LDL @n; B k; ADD
+  private static final int F_B_ECALL = 0x104;    // B k; ECALL
+
+  // Per-opcode decode tables, shared by the interpreter and the decode cache
+  private static final byte[] OPERAND_TYPE = new byte[256];
+  private static final byte[] CYCLES = new byte[256];
+  private static final byte[] HANDLER = new byte[256];
+
+  static {
+    for (int opcode = 0; opcode < 256; opcode++) {
+      OPERAND_TYPE[opcode] = (byte) operandType(opcode);
+      CYCLES[opcode] = (byte) instructionCycles(opcode);
+      HANDLER[opcode] = (byte) handlerGroup(opcode);
+    }
+  }
+
+  private final int[] wksp = new int[16]; // 16 workspace registers
+  private int AReg, BReg, CReg; // Stack-based registers
+  private int IPtr = 0; // Instruction Pointer
+  private final Memory memory;
+
+  // Direct views of the RAM and ROM pages behind memory, see DirectMemory
+  private final byte[][] readPages;
+  private final byte[][] writePages;
+  private final int[] pageBases;
+  private final long[][] dirtyBitsets;
+  private final int[] dirtyBases;
+  private static final int DIRECT_PAGE_MASK = (1 << DirectMemory.PAGE_SHIFT) - 1;
+
+  private boolean halted = false; // Flag to track if the CPU is halted
+  private boolean waiting = false; // Set by WFI until an enabled interrupt is pending
+  private boolean exited = false;  // Set together with halted by the EXIT system call
+  private int exitCode;            // The code passed to EXIT
+
+  private long cycleCount;                 // Cycles executed since reset
+  private long instructionCount;           // Instructions executed since reset
+  private long cycleDeadline;              // The current run ends at the first instruction boundary at or past this
+  private volatile boolean stopRequested;  // Set by the host to end the current run early
+
+  private ExecutionMode executionMode = ExecutionMode.INTERPRETER;
+  private DecodeCache decodeCache; // Present in ExecutionMode.PREDECODED and TRANSLATED
+  private BlockCache blockCache;   // Only present in ExecutionMode.TRANSLATED
+  private boolean fuseInstructions; // Decode common sequences into fused handlers
+  private OpcodeProfiler profiler;
+
+  // Number of times a block leader has to be reached before its block is translated
+  private static final int TRANSLATION_THRESHOLD = 32;
+
+  // Number of times a translated block has to run before it is compiled to bytecode
+  private static final int COMPILE_THRESHOLD = 256;
+
+  // Compiles hot blocks into hidden classes that are nestmates of this class
+  private static final BlockCompiler BLOCK_COMPILER = new BlockCompiler(MethodHandles.lookup());
+
+  private boolean atBlockLeader = true;  // True if IPtr is the first instruction of a basic block
+  private TranslatedBlock chainedBlock;  // Successor of the last executed block, if known
+
+  // -----------------------------------------------------------------------
+  // Machine Interrupt-related registers
+  // -----------------------------------------------------------------------
+
+  /**
+   * Machine Interrupt Enable: Controls whether interrupts are globally enabled.
+   * <p>
+   * Assembly Command:
+   *  - EI (Enable Interrupts): Sets MIE = true.
+   *  - DI (Disable Interrupts): Sets MIE = false.
+   */
+  private boolean MIE = false;
+  private int mip = 0;  // Machine Interrupt Pending Register (e.g., bit 0 for timer interrupt)
+  private int mie = SYSTEM_CALL_INTERRUPT_MASK | TIMER_INTERRUPT_MASK;  // Machine Interrupt Enable Register
+  private int currentInterrupt;  // Store the current interrupt cause
+
+  // Set by every write that can make an interrupt deliverable (mip, mie or MIE); the
+  // execution engines only look at the interrupt registers while it is set
+  private boolean attention;
+
+  private IntConsumer interruptListener;  // Diagnostic hook, see setInterruptListener()
+
+  private PrintStream console;     // Output of the ECALL print services, System.out if null
+  private InputStream consoleInput;  // Input of the ECALL read services, System.in if null
+
+  // -----------------------------------------------------------------------
+
+  public R824(Memory memory) {
+    this.memory = memory;
+    if (memory instanceof DirectMemory direct) {
+      readPages = direct.readPages();
+      writePages = direct.writePages();
+      pageBases = direct.pageBases();
+      dirtyBitsets = direct.dirtyBitsets();
+      dirtyBases = direct.dirtyBases();
+    } else {
+      readPages = new byte[DirectMemory.PAGE_COUNT][];
+      writePages = new byte[DirectMemory.PAGE_COUNT][];
+      pageBases = new int[DirectMemory.PAGE_COUNT];
+      dirtyBitsets = new long[DirectMemory.PAGE_COUNT][];
+      dirtyBases = new int[DirectMemory.PAGE_COUNT];
+    }
+  }
+
+  /**
+   * Selects how instructions are fetched and decoded. Switching modes never changes
+   * the guest-visible behaviour, only the host cost per instruction.
+   *
+   * @param mode The execution mode to use from the next instruction on.
+   */
+  public void setExecutionMode(ExecutionMode mode) {
+    executionMode = mode;
+    decodeCache = (mode != ExecutionMode.INTERPRETER) ? new DecodeCache() : null;
+    blockCache = (mode == ExecutionMode.TRANSLATED) ? new BlockCache() : null;
+    fuseInstructions = (mode == ExecutionMode.PREDECODED) && profiler == null;
+    atBlockLeader = true;
+    chainedBlock = null;
+  }
+
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * Drops all decoded instructions. Must be called after memory was modified other
+   * than by the CPU itself, e.g. when a program is loaded into a running system.
+   */
+  public void invalidateDecodeCache() {
+    if (decodeCache != null) {
+      decodeCache.clear();
+    }
+    if (blockCache != null) {
+      blockCache.clear();
+      chainedBlock = null;
+    }
+  }
+
+  /**
+   * Drops the decoded instructions that include any byte of the given range, like a CPU
+   * write to each of its bytes would. Everything else stays cached.
+   *
+   * @param address The first address that was modified.
+   * @param length  The number of bytes that were modified.
+   */
+  public void invalidateDecodeCache(int address, int length) {
+    if (decodeCache != null) {
+      for (int i = 0; i < length; i++) {
+        invalidateCode((address + i) & 0xFF_FFFF);
+      }
+      chainedBlock = null;
+    }
+  }
+
+  /**
+   * The registers, interrupt state and counters of an R824, see {@link #saveState()}.
+   */
+  public record State(int aReg, int bReg, int cReg, int iPtr, int[] wksp,
+                      boolean interruptsEnabled, int mip, int mie, int currentInterrupt,
+                      boolean halted, boolean waiting, boolean exited, int exitCode,
+                      long cycleCount, long instructionCount) {
+  }
+
+  /**
+   * Captures the complete CPU state except memory. Must not be called while the CPU runs.
+   *
+   * @return The captured state.
+   */
+  public State saveState() {
+    return new State(AReg, BReg, CReg, IPtr, wksp.clone(), MIE, mip, mie, currentInterrupt,
+        halted, waiting, exited, exitCode, cycleCount, instructionCount);
+  }
+
+  /**
+   * Returns the CPU to a state captured by {@link #saveState()}. Must not be called while
+   * the CPU runs. Decoded instructions stay cached, so memory that was modified other
+   * than by the CPU has to be invalidated separately.
+   *
+   * @param state The state to restore.
+   */
+  public void restoreState(State state) {
+    AReg = state.aReg();
+    BReg = state.bReg();
+    CReg = state.cReg();
+    IPtr = state.iPtr();
+    System.arraycopy(state.wksp(), 0, wksp, 0, wksp.length);
+    MIE = state.interruptsEnabled();
+    mip = state.mip();
+    mie = state.mie();
+    currentInterrupt = state.currentInterrupt();
+    halted = state.halted();
+    waiting = state.waiting();
+    exited = state.exited();
+    exitCode = state.exitCode();
+    cycleCount = state.cycleCount();
+    instructionCount = state.instructionCount();
+
+    attention = true;  // An interrupt may be deliverable in the restored state
+    stopRequested = false;
+    chainedBlock = null;
+    atBlockLeader = true;
+  }
+
+  /**
+   * Returns the number of cycles executed since the CPU was created. Devices use it as
+   * their time base; while an instruction executes it holds the count before that
+   * instruction.
+   */
+  public long getCycleCount() {
+    return cycleCount;
+  }
+
+  /**
+   * Returns the number of instructions executed since the CPU was created, counting each
+   * instruction of a fused sequence or translated block separately.
+   */
+  public long getInstructionCount() {
+    return instructionCount;
+  }
+
+  public boolean isHalted() {
+    return halted;
+  }
+
+  /**
+   * @return True if the program ended itself with the EXIT system call. The CPU is then
+   * halted as well.
+   */
+  public boolean hasExited() {
+    return exited;
+  }
+
+  /**
+   * @return The code the program passed to EXIT, only meaningful if {@link #hasExited()}.
+   */
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  /**
+   * @return True if the CPU executed WFI and no enabled interrupt has become pending since.
+   */
+  public boolean isWaiting() {
+    return waiting;
+  }
+
+  /**
+   * Installs a profiler that counts the opcode sequences executed by the interpreter and
+   * predecoded engines. Instruction fusion is turned off while a profiler is installed,
+   * so the profile always shows the plain instruction stream.
+   *
+   * @param profiler The profiler, or null to remove it.
+   */
+  public void setProfiler(OpcodeProfiler profiler) {
+    this.profiler = profiler;
+    setExecutionMode(executionMode);
+  }
+
+  /**
+   * Redirects the output of the ECALL print services.
+   *
+   * @param console The stream to print to, or null for System.out.
+   */
+  public void setConsole(PrintStream console) {
+    this.console = console;
+  }
+
+  /**
+   * Redirects the input of the ECALL read services.
+   *
+   * @param consoleInput The stream to read from, or null for System.in.
+   */
+  public void setConsoleInput(InputStream consoleInput) {
+    this.consoleInput = consoleInput;
+  }
+
+  /**
+   * Installs a diagnostic hook that is called with the pending interrupts (mip) every
+   * time an interrupt is taken. Without a listener interrupt delivery costs nothing extra.
+   *
+   * @param listener The hook, or null to remove it.
+   */
+  public void setInterruptListener(IntConsumer listener) {
+    interruptListener = listener;
+  }
+
+  /**
+   * Executes a single instruction.
+   *
+   * @return The number of cycles consumed, or 0 if the CPU is halted.
+   */
+  public int executeInstruction() {
+    if (halted || waiting) {
+      //System.out.println("CPU is halted. Execution stopped.");
+      return 0;
+    }
+
+    long start = cycleCount;
+    cycleDeadline = start + 1;  // Never run more than one instruction
+
+    if (blockCache != null) {
+      executeTranslated();
+    } else if (decodeCache != null) {
+      executePredecoded();
+    } else {
+      interpretInstruction();
+    }
+    return (int) (cycleCount - start);
+  }
+
+  /**
+   * Executes instructions until at least the given number of cycles has been consumed.
+   *
+   * @param cycleBudget The number of cycles to run for.
+   * @return The number of cycles actually consumed.
+   * @see #runUntil(long)
+   */
+  public int run(int cycleBudget) {
+    return (int) runUntil(cycleCount + cycleBudget);
+  }
+
+  /**
+   * Executes instructions in a tight loop until the cycle count reaches the given
+   * deadline. The run ends early when an interrupt is taken, when the CPU halts, when
+   * the host calls {@link #requestStop()}, or when a device moves the deadline forward
+   * through {@link #shortenRun(long)}. Like the single-step path, the run always stops
+   * at an instruction boundary, so it may end a few cycles past the deadline.
+   * <p>
+   * A halted or waiting CPU has nothing to execute, so its cycle count jumps straight to
+   * the deadline, which is normally the next device event.
+   *
+   * @param deadline The cycle count at which to stop.
+   * @return The number of cycles actually consumed.
+   */
+  public long runUntil(long deadline) {
+    long start = cycleCount;
+    if (halted || waiting) {
+      if (deadline != Long.MAX_VALUE && deadline > cycleCount) {
+        cycleCount = deadline;  // Fast-forward idle time
+      }
+      stopRequested = false;
+      return cycleCount - start;
+    }
+
+    cycleDeadline = deadline;
+    if (blockCache != null) {
+      while (cycleCount < cycleDeadline && !stopRequested) {
+        executeTranslated();
+      }
+    } else if (decodeCache != null) {
+      while (cycleCount < cycleDeadline && !stopRequested) {
+        executePredecoded();
+      }
+    } else {
+      while (cycleCount < cycleDeadline && !stopRequested) {
+        interpretInstruction();
+      }
+    }
+
+    stopRequested = false;
+    return cycleCount - start;
+  }
+
+  /**
+   * Ends the current run at the next instruction boundary. May be called from any thread.
+   */
+  public void requestStop() {
+    stopRequested = true;
+  }
+
+  /**
+   * Ends the current run at the given cycle if that is earlier than its deadline. Devices
+   * call this when guest code reprograms them so that their next event is handled on time.
+   *
+   * @param deadline The cycle count at which the current run should end at the latest.
+   */
+  public void shortenRun(long deadline) {
+    if (deadline < cycleDeadline) {
+      cycleDeadline = deadline;
+    }
+  }
+
+  /**
+   * Fetches, decodes and executes the instruction at IPtr without any caching.
+   */
+  private void interpretInstruction() {
+    int instruction = fetchNextInstruction();
+    if (profiler != null) {
+      profiler.record(instruction);
+    }
+    decodeAndExecute(instruction, fetchOperand(instruction));
+    cycleCount += CYCLES[instruction];
+    instructionCount++;
+    if (attention) {
+      checkInterrupts();
+    }
+  }
+
+  /**
+   * Executes the instruction at IPtr using its decode cache entry, decoding and caching
+   * it first if this address has not been seen (or was invalidated by a write).
+   * <p>
+   * A fused entry is only used when the run would have continued up to its last
+   * instruction and no interrupt can be taken in between; otherwise its first
+   * instruction is decoded again and executed on its own.
+   */
+  private void executePredecoded() {
+    long entry = predecodedEntry(IPtr);
+    int handler = DecodeCache.handler(entry);
+
+    if (handler > 0xFF) {
+      if (!attention && cycleCount + DecodeCache.leadCycles(entry) < cycleDeadline) {
+        IPtr = (IPtr + DecodeCache.length(entry)) & 0xFF_FFFF;
+        executeFused(handler, DecodeCache.operand(entry), entry);
+        if (attention) {
+          checkInterrupts();
+        }
+        return;
+      }
+      entry = decodeAt(IPtr);
+      handler = DecodeCache.handler(entry);
+    }
+    if (profiler != null) {
+      profiler.record(handler);
+    }
+
+    IPtr = (IPtr + DecodeCache.length(entry)) & 0xFF_FFFF;
+    decodeAndExecute(handler, DecodeCache.operand(entry));
+    cycleCount += DecodeCache.cycles(entry);
+    instructionCount++;
+    if (attention) {
+      checkInterrupts();
+    }
+  }
+
+  /**
+   * Returns the decode cache entry for the given address, decoding it on a miss.
+   *
+   * @param address The address of the opcode byte.
+   * @return The packed decode cache entry.
+   */
+  private long predecodedEntry(int address) {
+    long entry = decodeCache.lookup(address);
+    if (entry == 0) {
+      entry = decodeAt(address);
+      if (fuseInstructions) {
+        entry = fuseAt(address, entry);
+      }
+      decodeCache.store(address, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Looks for a fusable instruction sequence starting with the given decoded instruction.
+   * Only the last instruction of a sequence may write memory, so the sequence can never
+   * modify its own code before it has completed.
+   *
+   * @param address The address of the first instruction.
+   * @param first   The decode cache entry of the first instruction.
+   * @return A fused entry covering the whole sequence, or the first entry unchanged.
+   */
+  private long fuseAt(int address, long first) {
+    // Only look ahead within plain memory, where decoding has no side effects
+    if (readPages[address >>> DirectMemory.PAGE_SHIFT] == null
+        || (address & DIRECT_PAGE_MASK) > DIRECT_PAGE_MASK - DecodeCache.MAX_SPAN) {
+      return first;
+    }
+
+    int opcode = DecodeCache.handler(first);
+    int length = DecodeCache.length(first);
+    long second = decodeAt(address + length);
+    int nextOpcode = DecodeCache.handler(second);
+
+    if (HANDLER[opcode] == H_LDL && nextOpcode == 0b11_1100_00) {
+      return fused(F_LDL_PUSH, (opcode >> 2) & 0xF, first, second);
+    }
+    if (opcode == 0b10_1100_00 && HANDLER[nextOpcode] == H_STL) {
+      return fused(F_POP_STL, (nextOpcode >> 2) & 0xF, first, second);
+    }
+    if (opcode == 0b10_0010_11 && nextOpcode == 0b11_1110_00) {
+      return fused(F_I_ST, DecodeCache.operand(first), first, second);
+    }
+    if (opcode == 0b00_0010_10 && nextOpcode == 0b01_1110_10) {
+      return fused(F_B_ECALL, DecodeCache.operand(first), first, second);
+    }
+    if (HANDLER[opcode] == H_LDL && nextOpcode == 0b00_0010_10) {
+      long third = decodeAt(address + length + DecodeCache.length(second));
+      if (DecodeCache.handler(third) == 0b00_0100_00) {
+        int operand = ((opcode >> 2) & 0xF) | (DecodeCache.operand(second) << 8);
+        return fused(F_LDL_B_ADD, operand, fused(0, 0, first, second), third);
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Combines decode cache entries into one entry for the given handler.
+   *
+   * @param handler The fused handler id.
+   * @param operand The operand passed to the fused handler.
+   * @param leading The entry of the instructions before the last one.
+   * @param last    The entry of the last instruction.
+   * @return The fused entry.
+   */
+  private static long fused(int handler, int operand, long leading, long last) {
+    int leadCycles = DecodeCache.cycles(leading);
+    return DecodeCache.entry(handler, operand,
+        DecodeCache.length(leading) + DecodeCache.length(last),
+        leadCycles + DecodeCache.cycles(last), leadCycles);
+  }
+
+  /**
+   * Executes a fused instruction sequence with the same effect as executing its
+   * instructions one by one. The cycle count is brought up to date before the last
+   * instruction, which is the only one that may access devices.
+   *
+   * @param handler The fused handler id.
+   * @param operand The operand of the fused entry.
+   * @param entry   The fused decode cache entry.
+   */
+  private void executeFused(int handler, int operand, long entry) {
+    long start = cycleCount;
+
+    switch (handler) {
+      case F_LDL_PUSH -> {
+        CReg = BReg;  // LDL @n
+        BReg = AReg;
+        AReg = wksp[operand];
+        cycleCount = start + DecodeCache.leadCycles(entry);
+        wksp[15] = (wksp[15] - 3) & 0xFF_FFFF;  // PUSH
+        write24BitValueToMemory(wksp[15], AReg);
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case F_POP_STL -> {
+        CReg = BReg;  // POP
+        BReg = AReg;
+        AReg = signExtend24to32(read24BitValueFromMemory(wksp[15] & 0xFF_FFFF));
+        wksp[15] = (wksp[15] + 3) & 0xFF_FFFF;
+        wksp[operand] = AReg;  // STL @n
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case F_I_ST -> {
+        BReg = AReg;  // I w
+        CReg = BReg;
+        AReg = operand;
+        cycleCount = start + DecodeCache.leadCycles(entry);
+        write24BitValueToMemory(BReg & 0xFF_FFFF, AReg);  // ST
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case F_LDL_B_ADD -> {
+        CReg = BReg;  // LDL @n
+        BReg = AReg;
+        AReg = wksp[operand & 0xF];
+        CReg = BReg;  // B k
+        BReg = AReg;
+        AReg = operand >> 8;
+        AReg = signExtend24to32((BReg + AReg) & 0xFF_FFFF);  // ADD
+        BReg = CReg;
+      }
+      case F_B_ECALL -> {
+        CReg = BReg;  // B k
+        BReg = AReg;
+        AReg = operand;
+        cycleCount = start + DecodeCache.leadCycles(entry);
+        executeSystem(0b01_1110_10, 0);  // ECALL
+      }
+    }
+
+    cycleCount = start + DecodeCache.cycles(entry);
+    instructionCount += (handler == F_LDL_B_ADD) ? 3 : 2;
+  }
+
+  /**
+   * Executes the next translated block, or a single predecoded instruction when no
+   * block exists yet for IPtr. Block leaders are counted on the way, and a block is
+   * translated once its leader has been reached TRANSLATION_THRESHOLD times.
+   */
+  private void executeTranslated() {
+    TranslatedBlock block = chainedBlock;
+    if (block == null || !block.valid || block.startAddress != IPtr) {
+      block = blockCache.lookup(IPtr);
+      if (block == null && atBlockLeader && blockCache.countEntry(IPtr) >= TRANSLATION_THRESHOLD) {
+        block = translateBlock(IPtr);
+        blockCache.store(block);
+      }
+    }
+
+    // Single-step when an interrupt may have to be taken after the next instruction,
+    // or when the run has to end at an instruction boundary inside the block
+    if (block == null || attention
+        || cycleCount + block.cycles[block.code.length - 1] >= cycleDeadline) {
+      chainedBlock = null;
+
+      long entry = predecodedEntry(IPtr);
+      int handler = DecodeCache.handler(entry);
+      int next = (IPtr + DecodeCache.length(entry)) & 0xFF_FFFF;
+
+      IPtr = next;
+      decodeAndExecute(handler, DecodeCache.operand(entry));
+      cycleCount += DecodeCache.cycles(entry);
+      instructionCount++;
+      if (attention) {
+        checkInterrupts();
+      }
+      atBlockLeader = IPtr != next || TranslatedBlock.endsBlock(handler);
+      return;
+    }
+
+    TranslatedBlock.Code compiled = block.compiled;
+    if (compiled != null) {
+      compiled.run(this, block);
+    } else {
+      executeBlock(block);
+      if (++block.executions == COMPILE_THRESHOLD && block.valid) {
+        block.compiled = BLOCK_COMPILER.compile(block);
+      }
+    }
+    if (attention) {
+      checkInterrupts();
+    }
+    chainedBlock = successorOf(block);
+    atBlockLeader = true;
+  }
+
+  /**
+   * Returns the block that starts at IPtr after the given block was executed, linking it
+   * to the block so the next lookup can be skipped.
+   *
+   * @param block The block that was just executed.
+   * @return The successor block, or null if it has not been translated.
+   */
+  private TranslatedBlock successorOf(TranslatedBlock block) {
+    TranslatedBlock successor = block.fallthrough;
+    if (successor == null || !successor.valid || successor.startAddress != IPtr) {
+      successor = block.taken;
+      if (successor == null || !successor.valid || successor.startAddress != IPtr) {
+        successor = blockCache.lookup(IPtr);
+        if (successor != null) {
+          if (IPtr == block.endAddress()) {
+            block.fallthrough = successor;
+          } else {
+            block.taken = successor;
+          }
+        }
+      }
+    }
+    return successor;
+  }
+
+  /**
+   * Translates the basic block starting at the given address.
+   *
+   * @param startAddress The address of the block leader.
+   * @return The translated block.
+   */
+  private TranslatedBlock translateBlock(int startAddress) {
+    int[] code = new int[TranslatedBlock.MAX_INSTRUCTIONS];
+    int[] operands = new int[TranslatedBlock.MAX_INSTRUCTIONS];
+    int[] nextAddress = new int[TranslatedBlock.MAX_INSTRUCTIONS];
+    int[] cycles = new int[TranslatedBlock.MAX_INSTRUCTIONS + 1];
+
+    int address = startAddress, count = 0;
+    while (count < TranslatedBlock.MAX_INSTRUCTIONS) {
+      long entry = predecodedEntry(address);
+      int opcode = DecodeCache.handler(entry);
+
+      address = (address + DecodeCache.length(entry)) & 0xFF_FFFF;
+
+      code[count] = TranslatedBlock.microOp(opcode) | (opcode << 8);
+      operands[count] = TranslatedBlock.microOperand(opcode, DecodeCache.operand(entry));
+      nextAddress[count] = address;
+      cycles[count + 1] = cycles[count] + DecodeCache.cycles(entry);
+      count++;
+
+      if (TranslatedBlock.endsBlock(opcode)) {
+        break;
+      }
+    }
+
+    return new TranslatedBlock(startAddress,
+        Arrays.copyOf(code, count), Arrays.copyOf(operands, count),
+        Arrays.copyOf(nextAddress, count), Arrays.copyOf(cycles, count + 1));
+  }
+
+  /**
+   * Runs a translated block. The stack registers live in locals for the length of the
+   * block and are written back when it exits; instructions without a micro-op are handed
+   * to decodeAndExecute with the registers synchronised around the call.
+   * <p>
+   * The cycle count is brought up to date before every memory access, so devices see
+   * the same time as in the interpreter. A store that invalidates the block or moves
+   * the run deadline forward ends the block after the storing instruction.
+   *
+   * @param block The block to run; it must start at IPtr.
+   */
+  private void executeBlock(TranslatedBlock block) {
+    final int[] code = block.code;
+    final int[] operands = block.operands;
+    final int[] nextAddress = block.nextAddress;
+    final int[] cycles = block.cycles;
+    final int[] w = wksp;
+    final long startCycle = cycleCount;
+    int a = AReg, b = BReg, c = CReg, t;
+    int ip = block.startAddress;
+
+    for (int i = 0; i < code.length; i++) {
+      int k = operands[i];
+      ip = nextAddress[i];
+
+      switch (code[i] & 0xFF) {
+        case TranslatedBlock.UOP_NOP -> { }
+        case TranslatedBlock.UOP_DUP -> { c = b; b = a; }
+        case TranslatedBlock.UOP_SWAP -> { t = b; b = a; a = t; }
+        case TranslatedBlock.UOP_ADD -> { a = signExtend24to32((b + a) & 0xFF_FFFF); b = c; }
+        case TranslatedBlock.UOP_SUB -> { a = signExtend24to32((b - a) & 0xFF_FFFF); b = c; }
+        case TranslatedBlock.UOP_MUL -> { a = signExtend24to32((b * a) & 0xFF_FFFF); b = c; }
+        case TranslatedBlock.UOP_AND -> { a = (b & a) & 0xFF_FFFF; b = c; }
+        case TranslatedBlock.UOP_OR -> { a = (b | a) & 0xFF_FFFF; b = c; }
+        case TranslatedBlock.UOP_XOR -> { a = (b ^ a) & 0xFF_FFFF; b = c; }
+        case TranslatedBlock.UOP_SLL -> a = signExtend24to32((a << k) & 0xFF_FFFF);
+        case TranslatedBlock.UOP_SRL -> a = signExtend24to32((a >>> k) & 0xFF_FFFF);
+        case TranslatedBlock.UOP_SRA -> a = signExtend24to32((a >> k) | (a & 0x80_0000));
+        case TranslatedBlock.UOP_INC -> a = signExtend24to32((a + 1) & 0xFF_FFFF);
+        case TranslatedBlock.UOP_DEC -> a = signExtend24to32((a - 1) & 0xFF_FFFF);
+        case TranslatedBlock.UOP_NEG -> a = signExtend24to32((-a) & 0xFF_FFFF);
+        case TranslatedBlock.UOP_INV -> a = signExtend24to32(~a & 0xFF_FFFF);
+        case TranslatedBlock.UOP_I2B -> a = signExtend8to32(a & 0xFF);
+        case TranslatedBlock.UOP_SLT -> { a = (b < a) ? 1 : 0; b = c; }
+        case TranslatedBlock.UOP_SLTU -> { a = (Integer.compareUnsigned(b, a) < 0) ? 1 : 0; b = c; }
+        case TranslatedBlock.UOP_POP1 -> { a = b; b = c; }
+        case TranslatedBlock.UOP_POP2 -> a = b = c;
+        case TranslatedBlock.UOP_LD -> {
+          cycleCount = startCycle + cycles[i];
+          a = signExtend24to32(read24BitValueFromMemory(a & 0xFF_FFFF));
+        }
+        case TranslatedBlock.UOP_POP -> {
+          cycleCount = startCycle + cycles[i];
+          c = b;
+          b = a;
+          a = signExtend24to32(read24BitValueFromMemory(w[15] & 0xFF_FFFF));
+          w[15] = (w[15] + 3) & 0xFF_FFFF;
+        }
+        case TranslatedBlock.UOP_PUSH -> {
+          cycleCount = startCycle + cycles[i];
+          w[15] = (w[15] - 3) & 0xFF_FFFF;
+          write24BitValueToMemory(w[15], a);
+          a = b;
+          b = c;
+        }
+        case TranslatedBlock.UOP_ST -> {
+          cycleCount = startCycle + cycles[i];
+          write24BitValueToMemory(b & 0xFF_FFFF, a);
+          a = b;
+          b = c;
+        }
+        case TranslatedBlock.UOP_LB -> {
+          cycleCount = startCycle + cycles[i];
+          c = b;
+          b = a;
+          a = readByte(a & 0xFF_FFFF);
+        }
+        case TranslatedBlock.UOP_LU -> {
+          cycleCount = startCycle + cycles[i];
+          c = b;
+          b = a;
+          a = readByte(a & 0xFF_FFFF) & 0xFF;
+        }
+        case TranslatedBlock.UOP_SB -> {
+          cycleCount = startCycle + cycles[i];
+          writeByte(b & 0xFF_FFFF, (byte) (a & 0xFF));
+          a = b;
+          b = c;
+        }
+        case TranslatedBlock.UOP_LDK -> { c = b; b = a; a = k; }
+        case TranslatedBlock.UOP_IMM -> { b = a; c = b; a = k; }
+        case TranslatedBlock.UOP_AIIP -> { b = a; c = b; a = signExtend24to32((ip + k) & 0xFF_FFFF); }
+        case TranslatedBlock.UOP_LDL -> { c = b; b = a; a = w[k]; }
+        case TranslatedBlock.UOP_STL -> { w[k] = a; a = b; b = c; }
+        case TranslatedBlock.UOP_BEQ -> { if (b == a) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_BNE -> { if (b != a) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_BLT -> { if (b < a) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_BLTU -> { if (Integer.compareUnsigned(b, a) < 0) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_BGE -> { if (b >= a) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_BGEU -> { if (Integer.compareUnsigned(b, a) >= 0) ip = (ip + k) & 0xFF_FFFF; a = c; }
+        case TranslatedBlock.UOP_J -> ip = (ip + k) & 0xFF_FFFF;
+        case TranslatedBlock.UOP_JAL -> { a = ip; ip = (ip + k) & 0xFF_FFFF; }
+        case TranslatedBlock.UOP_JR -> { ip = a & 0xFF_FFFF; a = b; b = c; }
+        case TranslatedBlock.UOP_JALR -> { t = ip; ip = a & 0xFF_FFFF; a = t; }
+        default -> {
+          // Interpreter fallback with the registers synchronised around the call
+          AReg = a;
+          BReg = b;
+          CReg = c;
+          IPtr = ip;
+          cycleCount = startCycle + cycles[i];
+          decodeAndExecute(code[i] >>> 8, k);
+          a = AReg;
+          b = BReg;
+          c = CReg;
+          if (IPtr != ip || attention) {
+            // Control was transferred, or an interrupt may have to be taken
+            cycleCount = startCycle + cycles[i + 1];
+            instructionCount += i + 1;
+            return;
+          }
+        }
+      }
+
+      // A store into the block's own code or into a device that shortened the run
+      // ends the block after this instruction
+      if (!block.valid || startCycle + cycles[i + 1] >= cycleDeadline) {
+        AReg = a;
+        BReg = b;
+        CReg = c;
+        IPtr = ip;
+        cycleCount = startCycle + cycles[i + 1];
+        instructionCount += i + 1;
+        return;
+      }
+    }
+
+    AReg = a;
+    BReg = b;
+    CReg = c;
+    IPtr = ip;
+    cycleCount = startCycle + cycles[code.length];
+    instructionCount += code.length;
+  }
+
+  /**
+   * Decodes the instruction at the given address into a decode cache entry without
+   * touching IPtr.
+   *
+   * @param address The address of the opcode byte.
+   * @return The packed decode cache entry.
+   */
+  private long decodeAt(int address) {
+    int instruction = readByte(address) & 0xFF;
+    int operandAddress = (address + 1) & 0xFF_FFFF;
+    int operand = 0, length = 1;
+
+    switch (OPERAND_TYPE[instruction]) {
+      case OPERAND_IMM8 -> {
+        operand = readByte(operandAddress) & 0xFF;
+        length = 2;
+      }
+      case OPERAND_REL8 -> {
+        operand = readByte(operandAddress);  // Sign-extended by the byte to int conversion
+        length = 2;
+      }
+      case OPERAND_IMM24 -> {
+        operand = signExtend24to32(read24BitValueFromMemory(operandAddress));
+        length = 4;
+      }
+    }
+
+    return DecodeCache.entry(instruction, operand, length, CYCLES[instruction]);
+  }
+
+  /**
+   * Fetches the operand of the given instruction, if any, and returns it in the form
+   * the instruction uses it (sign-extended for REL8 and IMM24 operands).
+   *
+   * @param instruction The opcode that was just fetched.
+   * @return The decoded operand, or 0 for instructions without one.
+   */
+  private int fetchOperand(int instruction) {
+    return switch (OPERAND_TYPE[instruction]) {
+      case OPERAND_IMM8 -> fetch8BitOperand();
+      case OPERAND_REL8 -> signExtend8to32(fetch8BitOperand());
+      case OPERAND_IMM24 -> signExtend24to32(fetch24BitOperand());
+      default -> 0;
+    };
+  }
+
+  /**
+   * Returns the operand encoding that follows the given opcode byte.
+   *
+   * @param opcode The opcode byte.
+   * @return One of OPERAND_NONE, OPERAND_IMM8, OPERAND_REL8 or OPERAND_IMM24.
+   */
+  static int operandType(int opcode) {
+    return switch (opcode) {
+      case 0b10_0010_10,                    // U k
+           0b11_1000_11, 0b11_1001_11       // SETI k, CLRI k
+          -> OPERAND_IMM8;
+      case 0b00_0010_10,                    // B k
+           0b01_0000_10, 0b01_0001_10,      // BEQ k, BNE k
+           0b01_0100_10, 0b01_0101_10,      // BLT k, BLTU k
+           0b01_0110_10, 0b01_0111_10,      // BGE k, BGEU k
+           0b01_1000_10, 0b01_1001_10       // J k, JAL k
+          -> OPERAND_REL8;
+      case 0b10_0010_11,                    // I w
+           0b11_0010_11                     // AIIP w
+          -> OPERAND_IMM24;
+      default -> OPERAND_NONE;
+    };
+  }
+
+  /**
+   * Returns the number of cycles an instruction takes, including the fetch and decode
+   * of its opcode and the memory accesses it performs.
+   *
+   * @param opcode The opcode byte.
+   * @return The cycle cost of the instruction.
+   */
+  static int instructionCycles(int opcode) {
+    return S_IFETCH + S_DECODE + switch (opcode) {
+      case 0b10_0010_00,                    // LD
+           0b10_1100_00,                    // POP
+           0b10_0010_11,                    // I w
+           0b11_0010_11                     // AIIP w
+          -> S_MEM_READ * 3;
+      case 0b11_1100_00 -> S_MEM_WRITE * 3;  // PUSH
+      case 0b11_1110_00,                    // ST
+           0b01_1110_01                     // SB
+          -> S_MEM_WRITE;
+      case 0b00_0010_01, 0b10_0010_01,      // LB, LU
+           0b00_0010_10, 0b10_0010_10,      // B k, U k
+           0b01_0000_10, 0b01_0001_10,      // BEQ k, BNE k
+           0b01_0100_10, 0b01_0101_10,      // BLT k, BLTU k
+           0b01_0110_10, 0b01_0111_10,      // BGE k, BGEU k
+           0b01_1000_10, 0b01_1001_10,      // J k, JAL k
+           0b11_1000_11                     // SETI k
+          -> S_MEM_READ;
+      default -> 0;                         // CLRI reads its operand for free
+    };
+  }
+
+  /**
+   * Fetches the next instruction from memory using the Instruction Pointer (IPtr).
+   * The R824 system uses a 24-bit address space, so the IPtr is masked at the end
+   * to ensure it stays within that range.
+   *
+   * @return The next instruction byte, as an unsigned integer between 0 and 255.
+   */
+  private int fetchNextInstruction() {
+    // Fetch the next byte from memory at the current IPtr
+    int instruction = readByte(IPtr) & 0xFF;  // Fetch and mask the instruction byte
+
+    // Increment IPtr and mask to ensure it stays within 24-bit range
+    IPtr = (IPtr + 1) & 0xFF_FFFF;
+
+    return instruction;
+  }
+
+  /**
+   * Fetches the 8-bit operand from memory using the Instruction Pointer (IPtr).
+   * This method reads a single byte from memory, increments IPtr, and ensures that
+   * the IPtr remains within the 24-bit address space.
+   *
+   * @return The next 8-bit operand, as an unsigned integer between 0 and 255.
+   */
+  private int fetch8BitOperand() {
+    // Fetch the next byte from memory at the current IPtr
+    int operand = readByte(IPtr) & 0xFF;  // Fetch and mask the operand byte
+
+    // Increment IPtr and mask to ensure it stays within 24-bit range
+    IPtr = (IPtr + 1) & 0xFF_FFFF;
+
+    return operand;
+  }
+
+  /**
+   * Fetches the next 24-bit operand from memory using the Instruction Pointer (IPtr).
+   * This method reads three consecutive bytes from memory, constructs a 24-bit value,
+   * increments IPtr accordingly, and ensures that the IPtr remains within the 24-bit range.
+   *
+   * @return The next 24-bit operand, as an unsigned integer.
+   */
+  private int fetch24BitOperand() {
+    // Fetch three consecutive bytes from memory and combine them into a 24-bit value
+    int operand = read24BitValueFromMemory(IPtr);
+
+    // Increment IPtr by 3 and mask to ensure it stays within 24-bit range
+    IPtr = (IPtr + 3) & 0xFF_FFFF;
+
+    return operand;
+  }
+
+  /**
+   * Reads a 24-bit value from memory at the specified address.
+   * This method requires the address is aligned within the 24-bit range (0xFF_FFFF)
+   * and reads the value in little-endian format (the least significant byte first).
+   *
+   * @param alignedAddress The memory address from which the 24-bit value should be read.
+   * @return The 24-bit value read from the specified address, with the lower 24 bits populated.
+   */
+  private int read24BitValueFromMemory(int alignedAddress) {
+    int page = alignedAddress >>> DirectMemory.PAGE_SHIFT;
+    byte[] array = readPages[page];
+    if (array != null && (alignedAddress & DIRECT_PAGE_MASK) <= DIRECT_PAGE_MASK - 2) {
+      return LittleEndian.read24(array, alignedAddress - pageBases[page]);
+    }
+    if (alignedAddress <= 0xFF_FFFD) {
+      return memory.read24(alignedAddress);
+    }
+
+    // The value wraps around the end of the address space (LSB first).
+    int lowerByte = Byte.toUnsignedInt(memory.read(alignedAddress));      // Read least significant byte
+    int middleByte = Byte.toUnsignedInt(memory.read((alignedAddress + 1) & 0xFF_FFFF)); // Read middle byte
+    int upperByte = Byte.toUnsignedInt(memory.read((alignedAddress + 2) & 0xFF_FFFF));  // Read most significant byte
+
+    // Combine the bytes into a single 24-bit integer value.
+    return (upperByte << 16) | (middleByte << 8) | lowerByte;
+  }
+
+  /**
+   * Writes a 24-bit value to memory at the specified address.
+   * This method requires the address is aligned within the 24-bit range (0xFF_FFFF)
+   * and writes the value in little-endian format (the least significant byte first).
+   *
+   * @param alignedAddress The memory address where the 24-bit value should be written.
+   * @param value   The 24-bit value to be written, where only the lower 24 bits are used.
+   */
+  private void write24BitValueToMemory(int alignedAddress, int value) {
+    int page = alignedAddress >>> DirectMemory.PAGE_SHIFT;
+    byte[] array = writePages[page];
+    if (array != null && (alignedAddress & DIRECT_PAGE_MASK) <= DIRECT_PAGE_MASK - 2) {
+      LittleEndian.write24(array, alignedAddress - pageBases[page], value);
+      long[] dirty = dirtyBitsets[page];
+      if (dirty != null) {
+        int first = (alignedAddress - dirtyBases[page]) >>> DirectMemory.DIRTY_BLOCK_SHIFT;
+        int last = (alignedAddress + 2 - dirtyBases[page]) >>> DirectMemory.DIRTY_BLOCK_SHIFT;
+        dirty[first >>> 6] |= 1L << first;
+        if (last != first) {
+          dirty[last >>> 6] |= 1L << last;
+        }
+      }
+    } else if (alignedAddress <= 0xFF_FFFD) {
+      memory.write24(alignedAddress, value);
+    } else {
+      // The value wraps around the end of the address space (LSB first).
+      memory.write(alignedAddress, (byte) value);
+      memory.write((alignedAddress + 1) & 0xFF_FFFF, (byte) (value >> 8));
+      memory.write((alignedAddress + 2) & 0xFF_FFFF, (byte) (value >> 16));
+    }
+
+    if (decodeCache != null) {
+      invalidateCode(alignedAddress);
+      invalidateCode((alignedAddress + 1) & 0xFF_FFFF);
+      invalidateCode((alignedAddress + 2) & 0xFF_FFFF);
+    }
+  }
+
+  /**
+   * Reads a single byte, directly from the backing array if the page is RAM or ROM.
+   *
+   * @param address The 24-bit memory address to read from.
+   * @return The byte at the address.
+   */
+  private byte readByte(int address) {
+    int page = address >>> DirectMemory.PAGE_SHIFT;
+    byte[] array = readPages[page];
+    if (array != null) {
+      return array[address - pageBases[page]];
+    }
+    return memory.read(address);
+  }
+
+  /**
+   * Writes a single byte to memory, dropping any decoded instruction that covers the
+   * written address so self-modifying code and code loaded at run time is re-decoded.
+   * RAM pages are written directly, recording the written block on pages that track
+   * them; everything else goes through the Memory interface.
+   *
+   * @param address The 24-bit memory address to write to.
+   * @param value   The byte to write.
+   */
+  private void writeByte(int address, byte value) {
+    int page = address >>> DirectMemory.PAGE_SHIFT;
+    byte[] array = writePages[page];
+    if (array != null) {
+      array[address - pageBases[page]] = value;
+      long[] dirty = dirtyBitsets[page];
+      if (dirty != null) {
+        int block = (address - dirtyBases[page]) >>> DirectMemory.DIRTY_BLOCK_SHIFT;
+        dirty[block >>> 6] |= 1L << block;
+      }
+    } else {
+      memory.write(address, value);
+    }
+    if (decodeCache != null) {
+      invalidateCode(address);
+    }
+  }
+
+  /**
+   * Drops any decoded instruction or translated block that covers the written address,
+   * so self-modifying code and code loaded at run time is re-decoded.
+   *
+   * @param address The 24-bit memory address that was written.
+   */
+  private void invalidateCode(int address) {
+    decodeCache.invalidate(address);
+    if (blockCache != null) {
+      blockCache.invalidate(address);
+    }
+  }
+
+  /**
+   * Executes an instruction whose opcode and operand have already been fetched.
+   * <p>
+   * Dispatch goes through the dense HANDLER table to one small method per opcode group,
+   * which keeps every method well below HotSpot's compile and inlining limits. The
+   * LDL/STL families are handled inline as they dominate typical guest code. Pending
+   * interrupts are left to the caller, see checkInterrupts().
+   *
+   * @param instruction The opcode byte.
+   * @param operand     The decoded operand (see fetchOperand), or 0.
+   */
+  private void decodeAndExecute(int instruction, int operand) {
+    switch (HANDLER[instruction]) {
+      case H_NOP -> { } // NOP and unassigned opcodes
+      case H_LDL -> { // LDL @n
+        CReg = BReg;
+        BReg = AReg;
+        AReg = wksp[(instruction >> 2) & 0xF];
+      }
+      case H_STL -> { // STL @n
+        wksp[(instruction >> 2) & 0xF] = AReg;
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case H_STACK -> executeStack(instruction);
+      case H_ALU -> executeAlu(instruction);
+      case H_UNARY -> executeUnary(instruction);
+      case H_IMMEDIATE -> executeImmediate(instruction, operand);
+      case H_MEMORY -> executeMemory(instruction);
+      case H_BRANCH -> executeBranch(instruction, operand);
+      case H_JUMP -> executeJump(instruction, operand);
+      case H_SYSTEM -> executeSystem(instruction, operand);
+    }
+  }
+
+  /**
+   * Returns the handler group that executes an opcode.
+   * <p>
+   * Opcodes are laid out as 0bXX_XXXX_GG, where GG selects the instruction group:
+   * 00 for stack, ALU and 24-bit memory instructions, 01 for byte memory instructions,
+   * 10 for immediate bytes, shifts, branches and jumps, and 11 for LDL/STL, 24-bit
+   * immediates and system instructions. Opcodes not listed here are unassigned and
+   * execute as NOP. This includes 0xAE (0b10_1011_10), which used to throw
+   * IllegalArgumentException: its case label had a ninth bit and never matched.
+   *
+   * @param opcode The opcode byte.
+   * @return One of the H_* handler ids.
+   */
+  static int handlerGroup(int opcode) {
+    if ((opcode & 0b11) == 0b11 && opcode < 0b10_0000_11) {
+      return (opcode < 0b01_0000_11) ? H_LDL : H_STL;
+    }
+    return switch (opcode) {
+      case 0b00_0010_00, 0b00_0011_00,      // DUP, SWAP
+           0b01_1110_00, 0b01_1111_00       // POP1, POP2
+          -> H_STACK;
+      case 0b00_0100_00, 0b00_0101_00,      // ADD, SUB
+           0b00_0110_00, 0b00_0111_00,      // MUL, DIV
+           0b00_1000_00, 0b00_1001_00,      // AND, OR
+           0b00_1010_00, 0b00_1011_00,      // XOR, REM
+           0b01_1000_00, 0b01_1001_00       // SLT, SLTU
+          -> H_ALU;
+      case 0b01_0000_00, 0b01_0001_00,      // INC, DEC
+           0b01_0010_00, 0b01_0011_00,      // NEG, INV
+           0b01_0111_00,                    // I2B
+           0b00_1100_00, 0b00_1101_00, 0b00_1110_00, 0b00_1111_00,  // SLL 1-4
+           0b00_1100_10, 0b00_1101_10, 0b00_1110_10, 0b00_1111_10,  // SRL 1-4
+           0b10_1100_10, 0b10_1101_10, 0b10_1110_10, 0b10_1111_10   // SRA 1-4
+          -> H_UNARY;
+      case 0b00_0010_10, 0b10_0010_10,      // B k, U k
+           0b10_0000_11, 0b10_0001_11,      // I0, I1
+           0b10_0010_11, 0b11_0010_11       // I w, AIIP w
+          -> H_IMMEDIATE;
+      case 0b10_0010_00, 0b10_1100_00,      // LD, POP
+           0b11_1100_00, 0b11_1110_00,      // PUSH, ST
+           0b00_0010_01, 0b10_0010_01,      // LB, LU
+           0b01_1110_01                     // SB
+          -> H_MEMORY;
+      case 0b01_0000_10, 0b01_0001_10,      // BEQ k, BNE k
+           0b01_0100_10, 0b01_0101_10,      // BLT k, BLTU k
+           0b01_0110_10, 0b01_0111_10       // BGE k, BGEU k
+          -> H_BRANCH;
+      case 0b01_1000_10, 0b01_1001_10,      // J k, JAL k
+           0b01_1010_10, 0b01_1011_10       // JR, JALR
+          -> H_JUMP;
+      case 0b01_1110_10, 0b11_1110_10,      // ECALL, EBREAK
+           0b11_1000_11, 0b11_1001_11,      // SETI k, CLRI k
+           0b11_1100_11, 0b11_1101_11,      // EI, DI
+           0b11_1110_11, 0b11_1111_11,      // IRET, HLT
+           0b11_1101_10                     // WFI
+          -> H_SYSTEM;
+      default -> H_NOP;
+    };
+  }
+
+  private void executeStack(int instruction) {
+    int tReg;
+
+    switch (instruction) {
+      case 0b00_0010_00 -> { // DUP
+        CReg = BReg;
+        BReg = AReg;
+      }
+      case 0b00_0011_00 -> { // SWAP
+        tReg = BReg;
+        BReg = AReg;
+        AReg = tReg;
+      }
+      case 0b01_1110_00 -> { // POP1
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case 0b01_1111_00 -> { // POP2
+        AReg = BReg = CReg;
+      }
+    }
+  }
+
+  private void executeAlu(int instruction) {
+    switch (instruction) {
+      case 0b00_0100_00 -> { // ADD
+        AReg = (BReg + AReg) & 0xFF_FFFF;
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b00_0101_00 -> {  // SUB
+        AReg = (BReg - AReg) & 0xFF_FFFF;
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b00_0110_00 -> { // MUL
+        AReg = (BReg * AReg) & 0xFF_FFFF;
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b00_0111_00 -> { // DIV
+        AReg = (BReg / AReg) & 0xFF_FFFF; // XXX DIVISION BY ZERO
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b00_1000_00 -> // AND
+          AReg = (BReg & AReg) & 0xFF_FFFF;
+      case 0b00_1001_00 -> // OR
+          AReg = (BReg | AReg) & 0xFF_FFFF;
+      case 0b00_1010_00 -> // XOR
+          AReg = (BReg ^ AReg) & 0xFF_FFFF;
+      case 0b00_1011_00 -> { // REM
+        AReg = (BReg % AReg) & 0xFF_FFFF; // XXX DIVISION BY ZERO
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b01_1000_00 -> // SLT
+          AReg = (BReg < AReg) ? 1 : 0;
+      case 0b01_1001_00 -> // SLTU
+          AReg = (Integer.compareUnsigned(BReg, AReg) < 0) ? 1 : 0; // Unsigned comparison
+    }
+
+    // All binary operations consume B and leave the result in A
+    BReg = CReg;
+  }
+
+  private void executeUnary(int instruction) {
+    int shift = ((instruction >> 2) & 0b11) + 1;  // Shift amount of SLL/SRL/SRA 1-4
+
+    switch (instruction) {
+      case 0b01_0000_00 -> { // INC
+        AReg = (AReg + 1) & 0xFF_FFFF;  // Increment and mask to 24 bits
+        AReg = signExtend24to32(AReg);  // Sign-extend if necessary
+      }
+      case 0b01_0001_00 -> {  // DEC
+        AReg = (AReg - 1) & 0xFF_FFFF;  // Decrement and mask to 24 bits
+        AReg = signExtend24to32(AReg);  // Sign-extend if necessary
+      }
+      case 0b01_0010_00 -> { // NEG
+        AReg = (-AReg) & 0xFF_FFFF;  // Negate and mask to 24 bits
+        AReg = signExtend24to32(AReg);  // Sign-extend if necessary
+      }
+      case 0b01_0011_00 -> { // INV
+        AReg = ~AReg & 0xFF_FFFF; // Perform bitwise NOT on AReg, keeping it within 24 bits
+        AReg = signExtend24to32(AReg);     // Sign-extend if necessary
+      }
+      case 0b01_0111_00 -> { // I2B (int to byte)
+        AReg = AReg & 0xFF;               // Mask to keep only the lower 8 bits (convert to byte)
+        AReg = signExtend8to32(AReg);
+      }
+      case 0b00_1100_00, 0b00_1101_00, 0b00_1110_00, 0b00_1111_00 -> { // SLL n (A = A << n)
+        AReg = (AReg << shift) & 0xFFFFFF; // Shift left by n and mask to 24 bits
+        AReg = signExtend24to32(AReg);  // Sign-extend to 32 bits if necessary
+      }
+      case 0b00_1100_10, 0b00_1101_10, 0b00_1110_10, 0b00_1111_10 -> { // SRL n (A = A >>> n)
+        AReg = (AReg >>> shift) & 0xFF_FFFF; // Result is in the 24-bit range
+        AReg = signExtend24to32(AReg);  // Sign-extend to 32 bits if necessary
+      }
+      case 0b10_1100_10, 0b10_1101_10, 0b10_1110_10, 0b10_1111_10 -> { // SRA n (A = A >> n)
+        AReg = (AReg >> shift) | (AReg & 0x800000);  // Preserve the 24th bit (sign bit)
+        AReg = signExtend24to32(AReg);           // Sign-extend to 32-bit
+      }
+    }
+  }
+
+  private void executeImmediate(int instruction, int operand) {
+    switch (instruction) {
+      case 0b00_0010_10, 0b10_0010_10 -> { // B k / U k (Load Immediate Signed / Unsigned Byte)
+        // Preserve the old values of AReg and BReg
+        CReg = BReg;              // Move BReg into CReg
+        BReg = AReg;              // Move the old AReg into BReg before reading
+
+        // The operand is already sign-extended (B) or zero-extended (U)
+        AReg = operand;
+      }
+      case 0b10_0000_11 -> { // I_#0 A = 0, B = A, C = B
+        BReg = AReg;  // Move AReg into BReg
+        CReg = BReg;  // Move BReg into CReg
+        AReg = 0;  // Set AReg to 0
+      }
+      case 0b10_0001_11 -> { // I_#1 A = 1, B = A, C = B
+        BReg = AReg;  // Move AReg into BReg
+        CReg = BReg;  // Move BReg into CReg
+        AReg = 1;  // Set AReg to 1
+      }
+      case 0b10_0010_11 -> { // I w, A = Immediate 24-bit value, B = A, C = B
+        BReg = AReg;  // Move AReg into BReg
+        CReg = BReg;  // Move BReg into CReg
+        AReg = operand;  // Sign-extended 24-bit immediate
+      }
+      case 0b11_0010_11 -> { // AIIP w, A = IPtr + w, B = A, C = B
+        // Copy AReg to BReg and CReg
+        BReg = AReg;
+        CReg = BReg;
+
+        // Add the immediate value to IPtr and store the result in AReg
+        AReg = (IPtr + operand) & 0xFF_FFFF;  // Result is a 24-bit value
+        AReg = signExtend24to32(AReg);  // Sign-extend to 32 bits if necessary
+      }
+    }
+  }
+
+  private void executeMemory(int instruction) {
+    switch (instruction) {
+      case 0b10_0010_00 -> { // LD A=[A] (Load 24-bit value and sign-extend to 32-bit)
+        // Read the 24-bit value from memory at AReg and sign-extend it to 32 bits
+        AReg = signExtend24to32(read24BitValueFromMemory(AReg & 0xFF_FFFF));
+      }
+      case 0b10_1100_00 -> { // POP A=[SP], B=A (before read), C=B (SP=SP+3)
+        // Preserve the old values of AReg and BReg
+        CReg = BReg;          // Move BReg into CReg
+        BReg = AReg;          // Move the old AReg into BReg before reading
+
+        // Read the 24-bit value from memory at the address pointed to by SP (wksp[15])
+        AReg = signExtend24to32(read24BitValueFromMemory(wksp[15] & 0xFF_FFFF));  // Load and sign-extend
+
+        // Increment SP to point to the next location (add 3 since we read 24 bits)
+        wksp[15] = (wksp[15] + 3) & 0xFF_FFFF;
+      }
+      case 0b11_1100_00 -> { // PUSH [SP]=A, A=B, B=C (SP=SP-3)
+        // Calculate the new stack pointer address and write AReg's value
+        wksp[15] = (wksp[15] - 3) & 0xFF_FFFF;  // Decrease SP by 3 and ensure it's within 24-bit range
+        write24BitValueToMemory(wksp[15], AReg);  // Write AReg's 24-bit value to memory at SP
+
+        // Move the values from BReg and CReg
+        AReg = BReg;  // AReg takes the value of BReg
+        BReg = CReg;  // BReg takes the value of CReg
+      }
+      case 0b11_1110_00 -> { // ST [B]=A, A=B, B=C
+        // Write the 24-bit value of AReg into memory at the address in BReg
+        write24BitValueToMemory(BReg & 0xFF_FFFF, AReg);
+
+        // Move the values from BReg and CReg
+        AReg = BReg;  // AReg takes the value of BReg
+        BReg = CReg;  // BReg takes the value of CReg
+      }
+      case 0b00_0010_01 -> { // LB A=[A] (Load Byte and Sign-Extend)
+        // Preserve the old values of AReg and BReg
+        CReg = BReg;              // Move BReg into CReg
+        BReg = AReg;              // Move the old AReg into BReg before reading
+
+        // Load the byte and sign-extend directly into AReg
+        AReg = readByte(AReg & 0xFF_FFFF);  // Read byte and cast to int for sign extension
+      }
+      case 0b10_0010_01 -> { // LU A=[A] (Load Unsigned Byte)
+        // Preserve the old values of AReg and BReg
+        CReg = BReg;              // Move BReg into CReg
+        BReg = AReg;              // Move the old AReg into BReg before reading
+
+        // Load the unsigned byte and zero-extend into AReg
+        AReg = readByte(AReg & 0xFF_FFFF) & 0xFF;  // Load byte, mask to ensure it's unsigned
+      }
+      case 0b01_1110_01 -> { // SB [B] = A (signed 8-bit), A = B, B = C
+        // Write only the lower 8 bits of AReg (signed byte) into memory at the address in BReg
+        writeByte(BReg & 0xFF_FFFF, (byte) (AReg & 0xFF));
+
+        // Move the values from BReg and CReg
+        AReg = BReg;  // AReg takes the value of BReg
+        BReg = CReg;  // BReg takes the value of CReg
+      }
+    }
+  }
+
+  private void executeBranch(int instruction, int operand) {
+    boolean taken = switch (instruction) {
+      case 0b01_0000_10 -> BReg == AReg;                                // BEQ k (B == A)
+      case 0b01_0001_10 -> BReg != AReg;                                // BNE k (B != A)
+      case 0b01_0100_10 -> BReg < AReg;                                 // BLT k (B < A)
+      case 0b01_0101_10 -> Integer.compareUnsigned(BReg, AReg) < 0;     // BLTU k (B < A unsigned)
+      case 0b01_0110_10 -> BReg >= AReg;                                // BGE k (B >= A)
+      default -> Integer.compareUnsigned(BReg, AReg) >= 0;              // BGEU k (B >= A unsigned)
+    };
+
+    if (taken) {
+      IPtr = (IPtr + operand) & 0xFF_FFFF; // Apply offset to instruction pointer
+    }
+    AReg = CReg; // A takes value of C
+  }
+
+  private void executeJump(int instruction, int operand) {
+    int tReg;
+
+    switch (instruction) {
+      case 0b01_1000_10 -> { // J k (IPtr = IPtr + k)
+        IPtr = (IPtr + operand) & 0xFF_FFFF; // Apply offset to instruction pointer
+      }
+      case 0b01_1001_10 -> { // JAL k (IPtr = IPtr + k, A = PC + 1)
+        AReg = IPtr; // Save the return address (IPtr + 1) in AReg
+        IPtr = (IPtr + operand) & 0xFF_FFFF; // Apply offset to instruction pointer
+      }
+      case 0b01_1010_10 -> { // JR (PC = A, A = B, B = C)
+        IPtr = AReg & 0xFF_FFFF; // Jump to address in AReg
+        AReg = BReg; // A takes value of B
+        BReg = CReg; // B takes value of C
+      }
+      case 0b01_1011_10 -> { // JALR (PC = A, A = PC + 1)
+        tReg = IPtr; // Temporarily store the current PC
+        IPtr = AReg & 0xFF_FFFF; // Jump to address in AReg
+        AReg = tReg; // A takes the return address (PC + 1)
+      }
+    }
+  }
+
+  private void executeSystem(int instruction, int operand) {
+    switch (instruction) {
+      case 0b01_1110_10 -> { // ECALL: Environment/System Call
+        //setInterruptPending(SYSTEM_CALL_INTERRUPT_MASK);
+        handleECall();
+      }
+      case 0b11_1110_10 -> { // EBREAK: Breakpoint for debugging or halting the CPU
+        // Call the handleEBreak function to handle the breakpoint or halt event
+        // This function should perform the following tasks:
+        // 1. Stop or halt the CPU execution.
+        //    - Typically used for debugging purposes, allowing the system or debugger to take control.
+        // 2. Optionally, signal the halt or breakpoint to an external debugger.
+        //    - Depending on the system, this might interact with debugging hardware or software.
+        // 3. If the EBREAK is meant to halt execution, ensure the CPU enters a halted state where it no longer executes instructions until further intervention.
+        handleEBreak();
+      }
+      case 0b11_1000_11 -> { // SETI mie|=k, k=1,2,4,8 (mask)
+        int mask = operand & 0x07;  // Interrupt mask from the operand byte
+        mie |= mask;  // Set the corresponding bit(s) in the mie register
+        attention = true;
+      }
+      case 0b11_1001_11 -> { // CLRI mie&=k, k=1,2,4,8 (mask)
+        int mask = operand & 0x07;  // Interrupt mask from the operand byte
+        mie &= ~mask;  // Clear the corresponding bit(s) in the mie register
+      }
+      case 0b11_1100_11 -> { // EI
+        MIE = true;
+        attention = true;
+      }
+      case 0b11_1101_11 -> { // DI
+        MIE = false;
+      }
+      case 0b11_1110_11 -> { // IRET
+        // Acknowledge interrupt (clear pending flag)
+        if (currentInterrupt != -1) {
+          int _currentInterrupt = currentInterrupt;
+          acknowledgeInterrupt(currentInterrupt);
+          currentInterrupt = -1;  // Clear interrupt
+          if (_currentInterrupt != SOFTWARE_INTERRUPT_MASK) {
+            // Restore state (e.g., instruction pointer and registers)
+            IPtr = wksp[14];
+            AReg = wksp[13];
+            BReg = wksp[12];
+            CReg = wksp[11];
+          }
+          MIE = true;  // Re-enable interrupts
+          attention = true;
+        }
+      }
+      case 0b11_1101_10 -> { // WFI
+        // Sleep until an enabled interrupt is pending; it is taken if MIE is set,
+        // otherwise execution simply continues after the WFI
+        if ((mip & mie) == 0) {
+          waiting = true;
+          cycleDeadline = cycleCount;  // End the current run
+        }
+      }
+      case 0b11_1111_11 -> { // HLT
+        // Implement the behavior for halting the CPU
+        halted = true;  // Assuming there's a 'halted' flag in your CPU simulation
+        cycleDeadline = cycleCount;  // End the current run
+      }
+    }
+  }
+
+  /**
+   * Takes the highest priority interrupt if one is pending, enabled and interrupts are
+   * globally enabled. Called after an instruction while the attention flag is set.
+   */
+  private void checkInterrupts() {
+    attention = false;
+    if (MIE && (mip & mie) != 0) {
+      if (interruptListener != null) {
+        interruptListener.accept(mip);
+      }
+      handleInterrupt();
+    }
+  }
+
+  // Handle Interrupt (Disable interrupts, save state, execute interrupt handler)
+  private void handleInterrupt() {
+    cycleDeadline = cycleCount;  // End the current run after this instruction
+    MIE = false;  // Disable interrupts
+
+    currentInterrupt = prioritizeInterrupt();
+
+    if (currentInterrupt == SOFTWARE_INTERRUPT_MASK) {
+      handleEBreak();  // Handle breakpoints separately
+    } else {
+      // Save the CPU state (registers, instruction pointer)
+      wksp[11] = CReg;
+      wksp[12] = BReg;
+      wksp[13] = AReg;
+      wksp[14] = IPtr;
+
+      // Handle other interrupts (system calls, timer, external, etc.)
+      if (currentInterrupt == SYSTEM_CALL_INTERRUPT_MASK) {
+        handleECall();
+      }
+
+      // Jump to the interrupt handler:
+      IPtr = MTVEC;
+    }
+  }
+
+  // Function to prioritize interrupts based on mip
+  private int prioritizeInterrupt() {
+    // Check the highest priority interrupt first (Software Interrupt)
+    if ((mip & SOFTWARE_INTERRUPT_MASK) != 0) return SOFTWARE_INTERRUPT_MASK;
+    if ((mip & TIMER_INTERRUPT_MASK) != 0) return TIMER_INTERRUPT_MASK;
+    if ((mip & EXTERNAL_INTERRUPT_MASK) != 0) return EXTERNAL_INTERRUPT_MASK;
+    if ((mip & DIV_ZERO_INTERRUPT_MASK) != 0) return DIV_ZERO_INTERRUPT_MASK;
+    if ((mip & SYSTEM_CALL_INTERRUPT_MASK) != 0) return SYSTEM_CALL_INTERRUPT_MASK;
+
+    return -1;  // No interrupt pending
+  }
+
+  // Set pending interrupt
+  public void setInterruptPending(int interruptBit) {
+    mip |= interruptBit;
+    attention = true;
+    if ((mip & mie) != 0) {
+      waiting = false;  // Wake up from WFI
+    }
+  }
+
+  // Acknowledge interrupt (clear pending flag)
+  private void acknowledgeInterrupt(int interruptBit) {
+    mip &= ~interruptBit;
+  }
+
+  // Helper method for 8-bit sign extension
+  int signExtend8to32(int value) {
+    return (value & 0x80) != 0 ? value | 0xFFFFFF00 : value & 0xFF;
+  }
+
+  // Helper method for 24-bit sign extension
+  private int signExtend24to32(int value) {
+    // If the 24th bit (sign bit) is set, sign-extend to 32 bits
+    if ((value & 0x80_0000) != 0) {
+      value |= 0xFF000000;  // Fill the upper 8 bits with 1s for sign-extension
+    }
+    return value;
+  }
+
+  // ---
+
+  private static final int EXIT = 0x00;
+  private static final int REGISTER_DUMP = 0x01;
+  private static final int MEMORY_DUMP = 0x02;
+  private static final int PRINT_INT = 0x03;
+  private static final int PRINT_CHAR = 0x04;
+  private static final int READ_CHAR = 0x05;
+  private static final int PRINT_STRING = 0x06;
+  private static final int READ_STRING = 0x07;
+
+  private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+  /**
+   * Handles ebreak instruction.
+   */
+  private void handleEBreak() {
+    // TODO
+  }
+
+  /**
+   * Handles ecall instruction.
+   */
+  private void handleECall() {
+    //out.println(format("ECALL 0x%02x", AReg));
+    PrintStream out = (console != null) ? console : System.out;
+    InputStream in = (consoleInput != null) ? consoleInput : System.in;
+
+    switch (AReg) {
+      case EXIT -> {
+        out.println("Exiting program...");
+
+        // Only this CPU stops; the host decides what to do with the exit code
+        exitCode = BReg;
+        exited = true;
+        halted = true;
+        cycleDeadline = cycleCount;  // End the current run
+      }
+      case REGISTER_DUMP -> {
+        out.println("------------");
+        out.printf("AReg: %06x%n", AReg & 0xFF_FFFF);
+        out.printf("BReg: %06x%n", BReg & 0xFF_FFFF);
+        out.printf("CReg: %06x%n", CReg & 0xFF_FFFF);
+        out.println("------------");
+        for (int i = 0; i < 16; i++) {
+          out.printf(" @%x : %06x%n", i, wksp[i] & 0xFF_FFFF);
+        }
+        out.println("------------\n");
+
+        // Stack shift: discard AReg
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case MEMORY_DUMP -> {
+        int m = (BReg - BReg % 16) & 0xFF_FFFF;
+        out.println();
+        for (int i = 0; i < 16; i++) {
+          out.printf("%06x", m);
+          for (int j = 0; j < 16; j++) {
+            out.printf(" | %02x", memory.read(m));
+            m = (m + 1) & 0xFF_FFFF;
+          }
+          out.println();
+
+          // Stack shift: discard AReg
+          AReg = BReg;
+          BReg = CReg;
+        }
+      }
+      case PRINT_INT -> {
+        printInt(out, BReg);
+
+        // Stack shift: discard AReg
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case PRINT_CHAR -> {
+        printChar(out, BReg & 0xFF); // ASCII
+
+        // Stack shift: discard AReg
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case READ_CHAR -> {
+        try {
+          AReg = in.read() & 0xFF;
+        } catch (IOException e) {
+          AReg = -1; // Error reading input
+        }
+      }
+      case PRINT_STRING -> {
+        int s = BReg & 0xFF_FFFF, c;
+        while ((c = memory.read(s++)) != 0) {
+          printChar(out, c & 0xFF); // ASCII
+        }
+        printNewline(out);
+
+        // Stack shift: discard AReg
+        AReg = BReg;
+        BReg = CReg;
+      }
+      case READ_STRING -> {
+        int buffer = CReg & 0xFF_FFFF;  // Starting memory address
+        int maxlen = BReg & 0xFF;  // Maximum length of string (1 byte)
+
+        try {
+          // Read byte by byte, so nothing after the line is consumed from the stream
+          int length = 0, c;
+          while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r' && length < maxlen - 1) {  // Ensure string fits in maxlen
+              writeByte(buffer + length++, (byte) c);  // Write each character to memory
+            }
+          }
+          writeByte(buffer + length, (byte) 0);  // Null-terminate string
+
+          AReg = length;  // Success
+        } catch (IOException e) {
+          AReg = -1;  // Error handling
+        }
+      }
+    }
+  }
+
+  // Prints a character without allocating; only non-ASCII characters need the encoder
+  private static void printChar(PrintStream out, int c) {
+    if (c < 0x80) {
+      out.write(c);
+    } else {
+      out.print((char) c);
+    }
+  }
+
+  // Prints the platform line separator without going through the stream's encoder
+  private static void printNewline(PrintStream out) {
+    for (int i = 0; i < LINE_SEPARATOR.length; i++) {
+      out.write(LINE_SEPARATOR[i]);
+    }
+  }
+
+  // Prints an integer in decimal without allocating a String
+  private static void printInt(PrintStream out, int value) {
+    long v = value;
+    if (v < 0) {
+      out.write('-');
+      v = -v;
+    }
+    long divisor = 1;
+    while (divisor * 10 <= v) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      out.write('0' + (int) (v / divisor % 10));
+    }
+  }
+
+}
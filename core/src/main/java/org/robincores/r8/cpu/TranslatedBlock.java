@@ -0,0 +1,206 @@
+package org.robincores.r8.cpu;
+
+/**
+ * A basic block of R824 code translated into a compact micro-op form.
+ * <p>
+ * A block starts at a branch target (or after another block) and ends after the first
+ * instruction that may leave straight-line execution: a branch, jump, ECALL, EBREAK,
+ * IRET, HLT, or an instruction that changes the interrupt state. Each slot holds the
+ * micro-op in the low byte of {@code code} and the original opcode above it, so
+ * instructions without a dedicated micro-op can fall back to the interpreter.
+ * <p>
+ * A new block runs its micro-ops in R824.executeBlock. Once it has run often enough,
+ * {@link BlockCompiler} turns it into JVM bytecode, which then runs instead.
+ */
+final class TranslatedBlock {
+  static final int MAX_INSTRUCTIONS = 64;
+  static final int MAX_BYTES = MAX_INSTRUCTIONS * 4;
+
+  // Micro-ops executed inline by the block runner
+  static final int UOP_FALLBACK = 0;   // Execute the original opcode in the interpreter
+  static final int UOP_NOP = 1;
+  static final int UOP_DUP = 2;
+  static final int UOP_SWAP = 3;
+  static final int UOP_ADD = 4;
+  static final int UOP_SUB = 5;
+  static final int UOP_MUL = 6;
+  static final int UOP_AND = 7;
+  static final int UOP_OR = 8;
+  static final int UOP_XOR = 9;
+  static final int UOP_SLL = 10;       // operand: shift amount
+  static final int UOP_SRL = 11;       // operand: shift amount
+  static final int UOP_SRA = 12;       // operand: shift amount
+  static final int UOP_INC = 13;
+  static final int UOP_DEC = 14;
+  static final int UOP_NEG = 15;
+  static final int UOP_INV = 16;
+  static final int UOP_I2B = 17;
+  static final int UOP_SLT = 18;
+  static final int UOP_SLTU = 19;
+  static final int UOP_POP1 = 20;
+  static final int UOP_POP2 = 21;
+  static final int UOP_LD = 22;
+  static final int UOP_POP = 23;
+  static final int UOP_PUSH = 24;
+  static final int UOP_ST = 25;
+  static final int UOP_LB = 26;
+  static final int UOP_LU = 27;
+  static final int UOP_SB = 28;
+  static final int UOP_LDK = 29;       // B k, U k: C = B, B = A, A = operand
+  static final int UOP_IMM = 30;       // I w, I0, I1: B = A, C = B, A = operand
+  static final int UOP_AIIP = 31;
+  static final int UOP_LDL = 32;       // operand: workspace register
+  static final int UOP_STL = 33;       // operand: workspace register
+  static final int UOP_BEQ = 34;
+  static final int UOP_BNE = 35;
+  static final int UOP_BLT = 36;
+  static final int UOP_BLTU = 37;
+  static final int UOP_BGE = 38;
+  static final int UOP_BGEU = 39;
+  static final int UOP_J = 40;
+  static final int UOP_JAL = 41;
+  static final int UOP_JR = 42;
+  static final int UOP_JALR = 43;
+
+  final int startAddress;
+  final int[] code;           // micro-op | opcode << 8
+  final int[] operands;       // micro-op operands
+  final int[] nextAddress;    // Address following each instruction (IPtr while it executes)
+  final int[] cycles;         // Cycles consumed before each instruction, plus the block total
+
+  boolean valid = true;       // Cleared when the guest writes to the block's code bytes
+
+  int executions;             // Runs of the micro-ops, until the block is compiled
+  Code compiled;              // The block as bytecode, null until it is hot enough
+
+  // Successor blocks, resolved lazily so blocks can be chained without a cache lookup
+  TranslatedBlock fallthrough;
+  TranslatedBlock taken;
+
+  /**
+   * A block compiled into a hidden class by {@link BlockCompiler}. Running it has the
+   * same effect as running the block's micro-ops.
+   */
+  interface Code {
+    /**
+     * @param cpu   The CPU, with IPtr at the start of the block.
+     * @param block The block the code was compiled from.
+     */
+    void run(R824 cpu, TranslatedBlock block);
+  }
+
+  TranslatedBlock(int startAddress, int[] code, int[] operands, int[] nextAddress, int[] cycles) {
+    this.startAddress = startAddress;
+    this.code = code;
+    this.operands = operands;
+    this.nextAddress = nextAddress;
+    this.cycles = cycles;
+  }
+
+  int endAddress() {
+    return nextAddress[nextAddress.length - 1];
+  }
+
+  boolean covers(int address) {
+    int length = (endAddress() - startAddress) & 0xFF_FFFF;
+    return ((address - startAddress) & 0xFF_FFFF) < length;
+  }
+
+  /**
+   * Returns true for the opcodes that end a basic block.
+   *
+   * @param opcode The opcode byte.
+   */
+  static boolean endsBlock(int opcode) {
+    return switch (opcode) {
+      case 0b01_0000_10, 0b01_0001_10,      // BEQ k, BNE k
+           0b01_0100_10, 0b01_0101_10,      // BLT k, BLTU k
+           0b01_0110_10, 0b01_0111_10,      // BGE k, BGEU k
+           0b01_1000_10, 0b01_1001_10,      // J k, JAL k
+           0b01_1010_10, 0b01_1011_10,      // JR, JALR
+           0b01_1110_10, 0b11_1110_10,      // ECALL, EBREAK
+           0b11_1000_11, 0b11_1001_11,      // SETI k, CLRI k
+           0b11_1100_11, 0b11_1101_11,      // EI, DI
+           0b11_1110_11, 0b11_1111_11,      // IRET, HLT
+           0b11_1101_10                     // WFI
+          -> true;
+      default -> false;
+    };
+  }
+
+  /**
+   * Maps an opcode to the micro-op that executes it inside a translated block.
+   *
+   * @param opcode The opcode byte.
+   * @return The micro-op, or UOP_FALLBACK if the interpreter has to execute it.
+   */
+  static int microOp(int opcode) {
+    if ((opcode & 0b11) == 0b11 && opcode < 0b10_0000_11) {
+      return (opcode < 0b01_0000_11) ? UOP_LDL : UOP_STL;
+    }
+    return switch (opcode) {
+      case 0b00_0000_00 -> UOP_NOP;
+      case 0b00_0010_00 -> UOP_DUP;
+      case 0b00_0011_00 -> UOP_SWAP;
+      case 0b00_0100_00 -> UOP_ADD;
+      case 0b00_0101_00 -> UOP_SUB;
+      case 0b00_0110_00 -> UOP_MUL;
+      case 0b00_1000_00 -> UOP_AND;
+      case 0b00_1001_00 -> UOP_OR;
+      case 0b00_1010_00 -> UOP_XOR;
+      case 0b00_1100_00, 0b00_1101_00, 0b00_1110_00, 0b00_1111_00 -> UOP_SLL;
+      case 0b00_1100_10, 0b00_1101_10, 0b00_1110_10, 0b00_1111_10 -> UOP_SRL;
+      case 0b10_1100_10, 0b10_1101_10, 0b10_1110_10, 0b10_1111_10 -> UOP_SRA;
+      case 0b01_0000_00 -> UOP_INC;
+      case 0b01_0001_00 -> UOP_DEC;
+      case 0b01_0010_00 -> UOP_NEG;
+      case 0b01_0011_00 -> UOP_INV;
+      case 0b01_0111_00 -> UOP_I2B;
+      case 0b01_1000_00 -> UOP_SLT;
+      case 0b01_1001_00 -> UOP_SLTU;
+      case 0b01_1110_00 -> UOP_POP1;
+      case 0b01_1111_00 -> UOP_POP2;
+      case 0b10_0010_00 -> UOP_LD;
+      case 0b10_1100_00 -> UOP_POP;
+      case 0b11_1100_00 -> UOP_PUSH;
+      case 0b11_1110_00 -> UOP_ST;
+      case 0b00_0010_01 -> UOP_LB;
+      case 0b10_0010_01 -> UOP_LU;
+      case 0b01_1110_01 -> UOP_SB;
+      case 0b00_0010_10, 0b10_0010_10 -> UOP_LDK;
+      case 0b10_0000_11, 0b10_0001_11, 0b10_0010_11 -> UOP_IMM;
+      case 0b11_0010_11 -> UOP_AIIP;
+      case 0b01_0000_10 -> UOP_BEQ;
+      case 0b01_0001_10 -> UOP_BNE;
+      case 0b01_0100_10 -> UOP_BLT;
+      case 0b01_0101_10 -> UOP_BLTU;
+      case 0b01_0110_10 -> UOP_BGE;
+      case 0b01_0111_10 -> UOP_BGEU;
+      case 0b01_1000_10 -> UOP_J;
+      case 0b01_1001_10 -> UOP_JAL;
+      case 0b01_1010_10 -> UOP_JR;
+      case 0b01_1011_10 -> UOP_JALR;
+      default -> UOP_FALLBACK;
+    };
+  }
+
+  /**
+   * Returns the operand a micro-op expects, folding opcode fields such as the workspace
+   * register of LDL/STL, the shift amount or the constant of I0/I1 into it.
+   *
+   * @param opcode  The opcode byte.
+   * @param operand The decoded instruction operand.
+   */
+  static int microOperand(int opcode, int operand) {
+    return switch (microOp(opcode)) {
+      case UOP_LDL, UOP_STL -> (opcode >> 2) & 0xF;
+      case UOP_SLL, UOP_SRL, UOP_SRA -> ((opcode >> 2) & 0b11) + 1;
+      case UOP_IMM -> switch (opcode) {
+        case 0b10_0000_11 -> 0;             // I0
+        case 0b10_0001_11 -> 1;             // I1
+        default -> operand;
+      };
+      default -> operand;
+    };
+  }
+}
@@ -0,0 +1,297 @@
+package org.robincores.r8.runner;
+
+import org.robincores.r8.cpu.ExecutionMode;
+import org.robincores.r8.cpu.R824;
+import org.robincores.r8.system.R824System;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many short programs in parallel, each in its own R824System, and collects one
+ * result per program.
+ * <p>
+ * Systems share no state, so the programs run on a fork-join pool with one worker per
+ * core by default. Every system gets its own console: output is captured in memory up
+ * to a limit, and reads see an empty input stream. A program ends when it calls EXIT,
+ * halts, reaches the cycle limit or fails, e.g. by accessing unmapped memory; none of
+ * these affect the other programs.
+ */
+public class BatchRunner {
+  public static final long DEFAULT_MAX_CYCLES = 1_000_000_000L;
+  public static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
+
+  public enum Status {
+    EXITED,       // The program called EXIT
+    HALTED,       // The program executed HLT
+    CYCLE_LIMIT,  // The program was still running at the cycle limit
+    ERROR         // The program could not be loaded, or the system failed while running it
+  }
+
+  /**
+   * The outcome of running one program.
+   *
+   * @param program      The program file.
+   * @param status       How the run ended.
+   * @param exitCode     The code passed to EXIT, 0 unless the status is EXITED.
+   * @param cycles       The cycles executed.
+   * @param instructions The instructions executed.
+   * @param wallNanos    The wall-clock time the run took.
+   * @param output       The console output, at most the output limit.
+   * @param droppedBytes The number of output bytes beyond the limit.
+   * @param error        A description of the failure, or null.
+   */
+  public record Result(Path program, Status status, int exitCode, long cycles, long instructions,
+                       long wallNanos, byte[] output, long droppedBytes, String error) {
+
+    public boolean failed() {
+      return status == Status.ERROR || (status == Status.EXITED && exitCode != 0);
+    }
+  }
+
+  private final int parallelism;
+  private int loadAddress = 0x000000;
+  private long maxCycles = DEFAULT_MAX_CYCLES;
+  private long clockFrequency;
+  private ExecutionMode executionMode = ExecutionMode.INTERPRETER;
+  private int outputLimit = DEFAULT_OUTPUT_LIMIT;
+
+  /**
+   * @param parallelism The number of programs to run at the same time.
+   */
+  public BatchRunner(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public BatchRunner() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public void setLoadAddress(int loadAddress) {
+    this.loadAddress = loadAddress;
+  }
+
+  /**
+   * Sets the number of cycles after which a program is stopped. A batch always needs a
+   * limit, since a program that loops forever would otherwise keep its worker busy.
+   *
+   * @param maxCycles The cycle limit for each program.
+   */
+  public void setMaxCycles(long maxCycles) {
+    if (maxCycles <= 0 || maxCycles == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Batch runs need a cycle limit: " + maxCycles);
+    }
+    this.maxCycles = maxCycles;
+  }
+
+  public void setClockFrequency(long clockFrequency) {
+    this.clockFrequency = clockFrequency;
+  }
+
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode;
+  }
+
+  public void setOutputLimit(int outputLimit) {
+    this.outputLimit = outputLimit;
+  }
+
+  /**
+   * Runs all programs and waits for them to finish.
+   *
+   * @param programs The program files.
+   * @return One result per program, in the same order.
+   * @throws InterruptedException If the calling thread is interrupted while waiting.
+   */
+  public List<Result> run(List<Path> programs) throws InterruptedException {
+    List<Callable<Result>> tasks = new ArrayList<>(programs.size());
+    for (Path program : programs) {
+      tasks.add(() -> runProgram(program));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      List<Result> results = new ArrayList<>(programs.size());
+      for (Future<Result> future : pool.invokeAll(tasks)) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Batch task failed", e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Runs one program in a fresh system; never throws for failures of the guest
+  private Result runProgram(Path program) {
+    CapturedOutput output = new CapturedOutput(outputLimit);
+    long start = System.nanoTime();
+    R824System system = null;
+    Status status;
+    String error = null;
+
+    try {
+      system = new R824System();
+      system.setExecutionMode(executionMode);
+      system.setClockFrequency(clockFrequency);
+      system.setConsole(new PrintStream(output), InputStream.nullInputStream());
+      system.loadProgram(program.toString(), loadAddress);
+      system.runUntil(maxCycles);
+
+      R824 cpu = system.getCpu();
+      status = cpu.hasExited() ? Status.EXITED : cpu.isHalted() ? Status.HALTED : Status.CYCLE_LIMIT;
+    } catch (IOException | RuntimeException e) {
+      status = Status.ERROR;
+      error = e.toString();
+    }
+    long wallNanos = System.nanoTime() - start;
+
+    R824 cpu = (system != null) ? system.getCpu() : null;
+    return new Result(program, status,
+        (status == Status.EXITED) ? cpu.getExitCode() : 0,
+        (cpu != null) ? cpu.getCycleCount() : 0,
+        (cpu != null) ? cpu.getInstructionCount() : 0,
+        wallNanos, output.toByteArray(), output.dropped, error);
+  }
+
+  /**
+   * Prints one line per program followed by the totals, then the output of every
+   * program that failed.
+   *
+   * @param out       The stream to print to.
+   * @param results   The results of a batch.
+   * @param wallNanos The wall-clock time of the whole batch.
+   */
+  public static void printReport(PrintStream out, List<Result> results, long wallNanos) {
+    int nameWidth = 8;
+    for (Result result : results) {
+      nameWidth = Math.max(nameWidth, result.program().toString().length());
+    }
+
+    String format = "%-" + nameWidth + "s  %-11s %5s %14s %14s %10s %9s%n";
+    out.printf(format, "Program", "Status", "Code", "Cycles", "Instructions", "ms", "MIPS");
+
+    int[] statusCounts = new int[Status.values().length];
+    int failures = 0;
+    long totalCycles = 0;
+    long totalInstructions = 0;
+    for (Result result : results) {
+      out.printf(format, result.program(), result.status().name().toLowerCase(Locale.ROOT),
+          (result.status() == Status.EXITED) ? Integer.toString(result.exitCode()) : "-",
+          result.cycles(), result.instructions(),
+          String.format("%.1f", result.wallNanos() / 1e6),
+          String.format("%.2f", mips(result.instructions(), result.wallNanos())));
+
+      statusCounts[result.status().ordinal()]++;
+      failures += result.failed() ? 1 : 0;
+      totalCycles += result.cycles();
+      totalInstructions += result.instructions();
+    }
+
+    out.println();
+    out.printf("%d programs: %d exited, %d halted, %d at cycle limit, %d errors; %d failed%n",
+        results.size(), statusCounts[Status.EXITED.ordinal()], statusCounts[Status.HALTED.ordinal()],
+        statusCounts[Status.CYCLE_LIMIT.ordinal()], statusCounts[Status.ERROR.ordinal()], failures);
+    out.printf("Total: %d cycles, %d instructions in %.3f s, %.2f MIPS%n",
+        totalCycles, totalInstructions, wallNanos / 1e9, mips(totalInstructions, wallNanos));
+
+    for (Result result : results) {
+      if (result.failed()) {
+        out.println();
+        out.printf("--- %s ---%n", result.program());
+        out.write(result.output(), 0, result.output().length);
+        if (result.droppedBytes() > 0) {
+          out.printf("%n[%d more bytes of output dropped]%n", result.droppedBytes());
+        }
+        if (result.error() != null) {
+          out.println(result.error());
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the captured output of each program to its own file in the given directory,
+   * named after the program.
+   *
+   * @param directory The directory to write to; it is created if needed.
+   * @param results   The results of a batch.
+   * @throws IOException If a file cannot be written.
+   */
+  public static void writeOutputs(Path directory, List<Result> results) throws IOException {
+    Files.createDirectories(directory);
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      String name = result.program().getFileName() + ".out";
+      if (!names.add(name)) {
+        name = result.program().getFileName() + "-" + i + ".out";  // Same file name in another directory
+      }
+      Files.write(directory.resolve(name), result.output());
+    }
+  }
+
+  private static double mips(long instructions, long nanos) {
+    return instructions * 1e3 / Math.max(nanos, 1);
+  }
+
+  // Keeps the first bytes written up to a limit and counts the rest, so a program that
+  // prints in a loop cannot exhaust the heap
+  private static class CapturedOutput extends OutputStream {
+    private final int limit;
+    private byte[] buffer = new byte[256];
+    private int count;
+    private long dropped;
+
+    CapturedOutput(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) {
+      if (count >= limit) {
+        dropped++;
+        return;
+      }
+      if (count == buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.min(limit, 2 * buffer.length));
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      int kept = Math.min(len, limit - count);
+      if (count + kept > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.min(limit, Math.max(count + kept, 2 * buffer.length)));
+      }
+      System.arraycopy(b, off, buffer, count, kept);
+      count += kept;
+      dropped += len - kept;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, count);
+    }
+  }
+}
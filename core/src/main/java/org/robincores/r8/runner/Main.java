@@ -0,0 +1,204 @@
+package org.robincores.r8.runner;
+
+import org.robincores.r8.cpu.ExecutionMode;
+import org.robincores.r8.cpu.R824;
+import org.robincores.r8.system.ClockPacer;
+import org.robincores.r8.system.OffHeapRAM;
+import org.robincores.r8.system.R824System;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Runs R824 programs without a display, e.g. for benchmarks and scripted tests. Nothing
+ * on this path touches JavaFX.
+ * <p>
+ * A single program runs on the calling thread with the console attached, and a summary
+ * of the run is printed to stderr; the process exits with the program's exit code.
+ * Several programs, or a directory of .bin files, run as a batch on all cores, see
+ * {@link BatchRunner}, and a report of all runs is printed to stdout.
+ */
+public class Main {
+  private static final String USAGE = """
+      Usage: r8run <program.bin>... [options]
+        --load-address <addr>   Address to load the program at (default 0x000000)
+        --max-cycles <n>        Stop after n cycles (default: until the CPU halts,
+                                or 1000000000 in a batch)
+        --clock <hz>            Pace the guest to the given frequency, e.g. 8000000 or 8MHz
+        --mode <mode>           interpreter, predecoded or translated (default interpreter)
+        --memory-image <file>   Map the system RAM from a file, which keeps its contents
+                                between runs (single program only)
+      Batch options, used with several programs or a directory of .bin files:
+        --batch                 Run as a batch even if only one program is given
+        --threads <n>           Programs to run at the same time (default: one per core)
+        --output-dir <dir>      Write the output of each program to <dir>/<program>.out
+        --output-limit <bytes>  Output to keep per program (default 65536)""";
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    List<String> programFiles = new ArrayList<>();
+    int loadAddress = 0x000000;
+    long maxCycles = Long.MAX_VALUE;
+    long clockFrequency = 0;
+    ExecutionMode mode = ExecutionMode.INTERPRETER;
+    boolean batch = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    Path outputDir = null;
+    Path memoryImage = null;
+    int outputLimit = BatchRunner.DEFAULT_OUTPUT_LIMIT;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--load-address" -> loadAddress = Integer.decode(optionValue(args, ++i));
+          case "--max-cycles" -> maxCycles = Long.decode(optionValue(args, ++i));
+          case "--clock" -> clockFrequency = parseFrequency(optionValue(args, ++i));
+          case "--mode" -> mode = ExecutionMode.valueOf(optionValue(args, ++i).toUpperCase(Locale.ROOT));
+          case "--memory-image" -> memoryImage = Path.of(optionValue(args, ++i));
+          case "--batch" -> batch = true;
+          case "--threads" -> threads = Integer.parseInt(optionValue(args, ++i));
+          case "--output-dir" -> outputDir = Path.of(optionValue(args, ++i));
+          case "--output-limit" -> outputLimit = Integer.decode(optionValue(args, ++i));
+          default -> {
+            if (args[i].startsWith("--")) {
+              throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            programFiles.add(args[i]);
+          }
+        }
+      }
+      if (programFiles.isEmpty()) {
+        throw new IllegalArgumentException("No program given");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    String programFile = programFiles.get(0);
+    if (batch || programFiles.size() > 1 || Files.isDirectory(Path.of(programFile))) {
+      BatchRunner runner = new BatchRunner(threads);
+      runner.setLoadAddress(loadAddress);
+      runner.setMaxCycles((maxCycles != Long.MAX_VALUE) ? maxCycles : BatchRunner.DEFAULT_MAX_CYCLES);
+      runner.setClockFrequency(clockFrequency);
+      runner.setExecutionMode(mode);
+      runner.setOutputLimit(outputLimit);
+      System.exit(runBatch(runner, programFiles, outputDir));
+    }
+
+    R824System system = null;
+    OffHeapRAM imageRAM = null;
+    try {
+      if (memoryImage != null) {
+        imageRAM = OffHeapRAM.map(memoryImage, R824System.SYSTEM_RAM_SIZE);
+        system = new R824System(imageRAM);
+      } else {
+        system = new R824System();
+      }
+      system.loadProgram(programFile, loadAddress);
+    } catch (IOException e) {
+      System.err.println("Error reading " + ((system == null) ? "memory image: " : "program file: ") + e.getMessage());
+      System.exit(1);
+    }
+    system.setExecutionMode(mode);
+    system.setClockFrequency(clockFrequency);
+
+    long startNanos = System.nanoTime();
+    system.runUntil(maxCycles);
+    long wallNanos = System.nanoTime() - startNanos;
+    if (imageRAM != null) {
+      imageRAM.force();
+    }
+
+    printSummary(system, mode, wallNanos);
+    System.exit(system.getCpu().hasExited() ? system.getCpu().getExitCode() : 0);
+  }
+
+  // Runs a batch and prints its report; returns the process exit code
+  private static int runBatch(BatchRunner runner, List<String> programFiles, Path outputDir) {
+    try {
+      List<Path> programs = new ArrayList<>();
+      for (String programFile : programFiles) {
+        Path path = Path.of(programFile);
+        if (Files.isDirectory(path)) {
+          try (Stream<Path> files = Files.list(path)) {
+            files.filter(file -> file.toString().endsWith(".bin")).sorted().forEach(programs::add);
+          }
+        } else {
+          programs.add(path);
+        }
+      }
+
+      long startNanos = System.nanoTime();
+      List<BatchRunner.Result> results = runner.run(programs);
+      long wallNanos = System.nanoTime() - startNanos;
+
+      BatchRunner.printReport(System.out, results, wallNanos);
+      if (outputDir != null) {
+        BatchRunner.writeOutputs(outputDir, results);
+      }
+      return results.stream().anyMatch(BatchRunner.Result::failed) ? 2 : 0;
+    } catch (IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 1;
+    }
+  }
+
+  private static String optionValue(String[] args, int index) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+    }
+    return args[index];
+  }
+
+  // Parses a frequency in Hz, with an optional kHz or MHz suffix
+  private static long parseFrequency(String value) {
+    String lower = value.toLowerCase(Locale.ROOT);
+    if (lower.endsWith("mhz")) {
+      return Math.round(Double.parseDouble(lower.substring(0, lower.length() - 3)) * 1_000_000);
+    } else if (lower.endsWith("khz")) {
+      return Math.round(Double.parseDouble(lower.substring(0, lower.length() - 3)) * 1_000);
+    } else if (lower.endsWith("hz")) {
+      return Long.decode(lower.substring(0, lower.length() - 2));
+    }
+    return Long.decode(lower);
+  }
+
+  private static void printSummary(R824System system, ExecutionMode mode, long wallNanos) {
+    R824 cpu = system.getCpu();
+    long cycles = cpu.getCycleCount();
+    long instructions = cpu.getInstructionCount();
+    double seconds = wallNanos / 1e9;
+
+    System.err.println();
+    System.err.printf("Mode:         %s%n", mode.name().toLowerCase(Locale.ROOT));
+    System.err.printf("State:        %s%n", cpu.hasExited() ? "exited with code " + cpu.getExitCode()
+        : cpu.isHalted() ? "halted" : "stopped at cycle limit");
+    System.err.printf("Cycles:       %d%n", cycles);
+    System.err.printf("Instructions: %d%n", instructions);
+    System.err.printf("Wall time:    %.3f s%n", seconds);
+    System.err.printf("MIPS:         %.2f%n", instructions / Math.max(seconds, 1e-9) / 1e6);
+    System.err.printf("Guest clock:  %.2f MHz%n", cycles / Math.max(seconds, 1e-9) / 1e6);
+    System.err.printf("Memory:       %d KB resident of %d KB%n",
+        system.getResidentMemorySize() / 1024, system.getNominalMemorySize() / 1024);
+
+    ClockPacer pacer = system.getClockPacer();
+    if (pacer != null) {
+      System.err.printf("Pacing:       %d Hz, max lag %.3f ms, dropped %.3f ms%n",
+          pacer.getFrequency(), pacer.getMaxLagNanos() / 1e6, pacer.getDroppedNanos() / 1e6);
+    }
+  }
+}
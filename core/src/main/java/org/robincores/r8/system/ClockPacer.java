@@ -0,0 +1,136 @@
+package org.robincores.r8.system;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the CPU to a fixed guest clock frequency in wall-clock time.
+ * <p>
+ * The system asks the pacer for the end of each slice before running the CPU. Slices are
+ * one host quantum worth of guest cycles. When the guest is ahead of the wall clock the
+ * pacer parks the thread until it is due; when it is behind, slices grow to catch up in
+ * bursts of at most MAX_BURST_NANOS. A guest that falls more than MAX_LAG_NANOS behind,
+ * e.g. because the host was suspended, is resynchronised and the lost time is recorded
+ * instead of being replayed at full speed.
+ * <p>
+ * The drift statistics may be read from any thread.
+ */
+public class ClockPacer {
+  public static final long QUANTUM_NANOS = 1_000_000;        // 1ms slices
+  public static final long MAX_BURST_NANOS = 10_000_000;     // Longest catch-up slice
+  public static final long MAX_LAG_NANOS = 100_000_000;      // Lag beyond which time is dropped
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private final long frequency;
+  private final long quantumCycles;
+
+  // Wall-clock time and cycle count at which guest and host time were last aligned
+  private long epochNanos;
+  private long epochCycle;
+
+  private volatile long driftNanos;    // Guest time minus host time at the last slice
+  private volatile long maxLagNanos;   // Largest time the guest was behind
+  private volatile long droppedNanos;  // Host time skipped by resynchronisation
+  private volatile long parkCount;     // Number of times the thread was parked
+
+  /**
+   * @param frequency The guest clock frequency in Hz, e.g. 8_000_000.
+   */
+  public ClockPacer(long frequency) {
+    if (frequency <= 0) {
+      throw new IllegalArgumentException("Clock frequency must be positive: " + frequency);
+    }
+    this.frequency = frequency;
+    this.quantumCycles = Math.max(1, nanosToCycles(QUANTUM_NANOS));
+  }
+
+  /**
+   * Aligns guest time with the wall clock, e.g. when the system starts running.
+   *
+   * @param cycle The current CPU cycle count.
+   */
+  public void start(long cycle) {
+    epochNanos = System.nanoTime();
+    epochCycle = cycle;
+    driftNanos = 0;
+  }
+
+  /**
+   * Waits until the guest is due to run again and returns the end of its next slice.
+   *
+   * @param cycle The current CPU cycle count.
+   * @return The cycle count at which the next slice should end.
+   */
+  public long nextSlice(long cycle) {
+    long now = System.nanoTime();
+    long drift = cyclesToNanos(cycle - epochCycle) - (now - epochNanos);
+
+    if (drift > 0) {
+      // Ahead of the wall clock
+      parkCount++;
+      LockSupport.parkNanos(drift);
+    } else if (-drift > MAX_LAG_NANOS) {
+      // Too far behind to catch up, continue from here
+      droppedNanos += -drift;
+      epochNanos = now;
+      epochCycle = cycle;
+    } else if (drift < 0) {
+      maxLagNanos = Math.max(maxLagNanos, -drift);
+      driftNanos = drift;
+      return cycle + quantumCycles + nanosToCycles(Math.min(-drift, MAX_BURST_NANOS));
+    }
+
+    driftNanos = drift;
+    return cycle + quantumCycles;
+  }
+
+  /**
+   * Returns how long the guest has to wait until it is due to run again, without waiting.
+   * Hosts that must not block use this before asking for the next slice.
+   *
+   * @param cycle The current CPU cycle count.
+   * @return The time in nanoseconds until the guest is due, or 0 if it is due now.
+   */
+  public long nanosAhead(long cycle) {
+    return Math.max(0, cyclesToNanos(cycle - epochCycle) - (System.nanoTime() - epochNanos));
+  }
+
+  public long getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * @return Guest time minus wall-clock time when the last slice started, in nanoseconds.
+   * Positive values mean the guest was ahead and had to wait.
+   */
+  public long getDriftNanos() {
+    return driftNanos;
+  }
+
+  public long getMaxLagNanos() {
+    return maxLagNanos;
+  }
+
+  public long getDroppedNanos() {
+    return droppedNanos;
+  }
+
+  public long getParkCount() {
+    return parkCount;
+  }
+
+  public void resetStatistics() {
+    maxLagNanos = 0;
+    droppedNanos = 0;
+    parkCount = 0;
+  }
+
+  private long cyclesToNanos(long cycles) {
+    // Split to avoid overflowing cycles * NANOS_PER_SECOND
+    return cycles / frequency * NANOS_PER_SECOND + cycles % frequency * NANOS_PER_SECOND / frequency;
+  }
+
+  private long nanosToCycles(long nanos) {
+    return nanos / NANOS_PER_SECOND * frequency + nanos % NANOS_PER_SECOND * frequency / NANOS_PER_SECOND;
+  }
+}
@@ -0,0 +1,146 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.R824;
+import java.util.Arrays;
+
+/**
+ * Keeps the next event of every device in a priority queue ordered by CPU cycle, so the
+ * system can run the CPU in one batch up to the earliest event instead of asking each
+ * device after every instruction.
+ * <p>
+ * Devices are identified by the id returned from {@link #register(ScheduledDevice)}.
+ * The queue is a binary heap of device ids with a position index, so rescheduling a
+ * device is O(log n) and never allocates.
+ */
+public class DeviceScheduler {
+  private final R824 cpu;
+
+  private ScheduledDevice[] devices = new ScheduledDevice[4];
+  private long[] deadlines = new long[4];  // Deadline of each device id
+  private int[] position = new int[4];     // Heap index of each device id, -1 if not scheduled
+  private int[] heap = new int[4];         // Scheduled device ids, earliest deadline first
+  private int deviceCount;
+  private int size;
+
+  /**
+   * @param cpu The CPU whose cycle count the deadlines refer to. A run in progress is
+   *            shortened when a device schedules an event before its end.
+   */
+  public DeviceScheduler(R824 cpu) {
+    this.cpu = cpu;
+  }
+
+  /**
+   * Adds a device to the scheduler. It is not scheduled until {@link #schedule} is called.
+   *
+   * @param device The device to call back.
+   * @return The id to schedule the device with.
+   */
+  public int register(ScheduledDevice device) {
+    if (deviceCount == devices.length) {
+      devices = Arrays.copyOf(devices, deviceCount * 2);
+      deadlines = Arrays.copyOf(deadlines, deviceCount * 2);
+      position = Arrays.copyOf(position, deviceCount * 2);
+      heap = Arrays.copyOf(heap, deviceCount * 2);
+    }
+    devices[deviceCount] = device;
+    position[deviceCount] = -1;
+    return deviceCount++;
+  }
+
+  /**
+   * Sets the cycle at which a device is called back, replacing its previous deadline.
+   *
+   * @param id       The device id.
+   * @param deadline The CPU cycle count of the event, or Long.MAX_VALUE to cancel it.
+   */
+  public void schedule(int id, long deadline) {
+    if (deadline == Long.MAX_VALUE) {
+      cancel(id);
+      return;
+    }
+
+    deadlines[id] = deadline;
+    if (position[id] < 0) {
+      position[id] = size;
+      heap[size++] = id;
+      siftUp(position[id]);
+    } else {
+      siftDown(siftUp(position[id]));
+    }
+
+    // The device may have been reprogrammed by the CPU in the middle of a run
+    cpu.shortenRun(deadline);
+  }
+
+  public void cancel(int id) {
+    int index = position[id];
+    if (index < 0) {
+      return;
+    }
+    position[id] = -1;
+    int last = heap[--size];
+    if (index < size) {
+      heap[index] = last;
+      position[last] = index;
+      siftDown(siftUp(index));
+    }
+  }
+
+  /**
+   * @return The cycle count of the earliest scheduled event, or Long.MAX_VALUE if none.
+   */
+  public long nextDeadline() {
+    return (size > 0) ? deadlines[heap[0]] : Long.MAX_VALUE;
+  }
+
+  /**
+   * Calls back every device whose deadline is at or before the given cycle count.
+   *
+   * @param now The current CPU cycle count.
+   */
+  public void runDue(long now) {
+    while (size > 0 && deadlines[heap[0]] <= now) {
+      int id = heap[0];
+      cancel(id);
+      devices[id].onDeadline();
+    }
+  }
+
+  private int siftUp(int index) {
+    int id = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (deadlines[heap[parent]] <= deadlines[id]) {
+        break;
+      }
+      heap[index] = heap[parent];
+      position[heap[index]] = index;
+      index = parent;
+    }
+    heap[index] = id;
+    position[id] = index;
+    return index;
+  }
+
+  private void siftDown(int index) {
+    int id = heap[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && deadlines[heap[child + 1]] < deadlines[heap[child]]) {
+        child++;
+      }
+      if (deadlines[heap[child]] >= deadlines[id]) {
+        break;
+      }
+      heap[index] = heap[child];
+      position[heap[index]] = index;
+      index = child;
+    }
+    heap[index] = id;
+    position[id] = index;
+  }
+}
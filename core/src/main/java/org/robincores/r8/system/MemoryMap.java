@@ -0,0 +1,492 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.DirectMemory;
+import org.robincores.r8.cpu.Memory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MemoryMap implements DirectMemory {
+  // The 16MB address space is split into 4KB pages, each resolved by a single table load
+  static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  private static class MemoryRegion {
+    int startAddress;
+    int size;
+    Memory memory;
+
+    MemoryRegion(int startAddress, int size, Memory memory) {
+      this.startAddress = startAddress;
+      this.size = size;
+      this.memory = memory;
+    }
+
+    boolean contains(int address) {
+      return address >= startAddress && address < startAddress + size;
+    }
+  }
+
+  // Handler for pages with no region mapped; addresses reach it unchanged
+  private static final Memory UNMAPPED = new Memory() {
+    @Override
+    public byte read(int address) {
+      throw unmapped(address);
+    }
+
+    @Override
+    public void write(int address, byte value) {
+      throw unmapped(address);
+    }
+  };
+
+  private static final MemoryRegion UNMAPPED_PAGE = new MemoryRegion(0, 0, UNMAPPED);
+
+  // Handler for pages shared by several regions smaller than a page, such as device registers
+  private static class SubPageDispatcher implements Memory {
+    private final List<MemoryRegion> regions = new ArrayList<>();
+
+    private MemoryRegion findRegion(int address) {
+      // Later mappings take precedence over earlier ones
+      for (int i = regions.size() - 1; i >= 0; i--) {
+        MemoryRegion region = regions.get(i);
+        if (region.contains(address)) {
+          return region;
+        }
+      }
+      throw unmapped(address);
+    }
+
+    @Override
+    public byte read(int address) {
+      MemoryRegion region = findRegion(address);
+      return region.memory.read(address - region.startAddress);
+    }
+
+    @Override
+    public void write(int address, byte value) {
+      MemoryRegion region = findRegion(address);
+      region.memory.write(address - region.startAddress, value);
+    }
+  }
+
+  // Each page points either at the region covering it completely, or at a region with a
+  // start address of 0 whose memory resolves the full address itself
+  private final MemoryRegion[] pageTable = new MemoryRegion[PAGE_COUNT];
+
+  // Backing arrays of pages that are plain RAM or ROM, see DirectMemory
+  private final byte[][] readPages = new byte[PAGE_COUNT][];
+  private final byte[][] writePages = new byte[PAGE_COUNT][];
+  private final int[] pageBases = new int[PAGE_COUNT];
+  private final long[][] dirtyBitsets = new long[PAGE_COUNT][];  // VideoRAM pages record their writes
+  private final int[] dirtyBases = new int[PAGE_COUNT];
+
+  // Write tracking for copy-on-write snapshots and modification tracking. A guarded RAM
+  // page has its writePages entry cleared, so the first write to it reaches write() here,
+  // where the page is preserved and recorded before direct writes are enabled again.
+  private final byte[][] ramPages = new byte[PAGE_COUNT][];  // Backing array of each RAM page
+  private final boolean[] guarded = new boolean[PAGE_COUNT];
+
+  private MemorySnapshot activeSnapshot;
+  private final boolean[] dirty = new boolean[PAGE_COUNT];  // Written since the last snapshot or restore
+  private final int[] dirtyPages = new int[PAGE_COUNT];     // The dirty pages in the order they were written
+  private int dirtyCount;
+
+  private final boolean[] modified = new boolean[PAGE_COUNT];  // Changed since trackModifications()
+
+  /**
+   * Receives the address ranges whose contents were changed by a restore.
+   */
+  public interface RestoreListener {
+    void restored(int address, int length);
+  }
+
+  public MemoryMap() {
+    Arrays.fill(pageTable, UNMAPPED_PAGE);
+  }
+
+  public void mapRegion(int startAddress, int size, Memory memory) {
+    if (startAddress < 0 || size <= 0 || startAddress + size > PAGE_COUNT * PAGE_SIZE) {
+      throw new IllegalArgumentException("Region does not fit in the address space: " + startAddress);
+    }
+    MemoryRegion region = new MemoryRegion(startAddress, size, memory);
+    int endAddress = startAddress + size;
+
+    for (int page = startAddress >>> PAGE_SHIFT; page <= (endAddress - 1) >>> PAGE_SHIFT; page++) {
+      int pageStart = page << PAGE_SHIFT;
+      if (startAddress <= pageStart && endAddress >= pageStart + PAGE_SIZE) {
+        pageTable[page] = region;
+        setDirectPage(page, memory, startAddress);
+        continue;
+      }
+
+      // The region only covers part of this page, so it has to share it
+      MemoryRegion entry = pageTable[page];
+      SubPageDispatcher dispatcher;
+      if (entry.memory instanceof SubPageDispatcher existing) {
+        dispatcher = existing;
+      } else {
+        dispatcher = new SubPageDispatcher();
+        if (entry != UNMAPPED_PAGE) {
+          dispatcher.regions.add(entry);
+        }
+        pageTable[page] = new MemoryRegion(0, 0, dispatcher);
+        setDirectPage(page, dispatcher, 0);
+      }
+      dispatcher.regions.add(region);
+    }
+  }
+
+  private void setDirectPage(int page, Memory memory, int base) {
+    readPages[page] = null;
+    writePages[page] = null;
+    ramPages[page] = null;
+    guarded[page] = false;
+    pageBases[page] = base;
+    dirtyBitsets[page] = null;
+    if (memory instanceof RAM ram) {
+      readPages[page] = ram.array();
+      writePages[page] = ram.array();
+      ramPages[page] = ram.array();
+    } else if (memory instanceof ROM rom) {
+      readPages[page] = rom.array();  // Writes still go through ROM.write()
+    } else if (memory instanceof SparseRAM sparse && (base & (PAGE_SIZE - 1)) == 0) {
+      // Each sparse page has an array of its own; the first write to a page that is still
+      // the shared zero page reaches write() here, see beforeWrite()
+      int pageStart = page << PAGE_SHIFT;
+      byte[] array = sparse.page(pageStart - base);
+      readPages[page] = array;
+      ramPages[page] = array;
+      pageBases[page] = pageStart;
+      if (sparse instanceof VideoRAM vram) {
+        dirtyBitsets[page] = vram.dirtyBitset();
+        dirtyBases[page] = base;
+      }
+      if (array == SparseRAM.ZERO_PAGE) {
+        guarded[page] = true;
+      } else {
+        writePages[page] = array;
+      }
+    }
+  }
+
+  /**
+   * Takes a copy-on-write snapshot of all RAM pages. Nothing is copied until a page is
+   * written, and only pages written since the last snapshot or restore have to be copied
+   * back by {@link #restore}. Device registers are not included.
+   * <p>
+   * The memory map must not be changed while a snapshot is in use. A previous snapshot
+   * is copied in full before the new one becomes active, so it can still be restored.
+   *
+   * @return The snapshot.
+   * @throws IllegalStateException If some RAM cannot be covered, see {@link #checkRamCovered()}.
+   */
+  public MemorySnapshot snapshot() {
+    checkRamCovered();
+    detachActiveSnapshot();
+
+    boolean[] covered = new boolean[PAGE_COUNT];
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      covered[page] = ramPages[page] != null;
+    }
+    activeSnapshot = new MemorySnapshot(this, covered);
+    clearDirty();
+    guardAll();
+    return activeSnapshot;
+  }
+
+  /**
+   * Returns the RAM pages to their contents in the given snapshot, which becomes the
+   * active one. For the active snapshot only the pages written since it was taken or
+   * last restored are copied back.
+   *
+   * @param snapshot The snapshot to restore.
+   * @param listener Called with every range whose contents changed, e.g. to drop decoded
+   *                 instructions, or null.
+   */
+  public void restore(MemorySnapshot snapshot, RestoreListener listener) {
+    if (snapshot.memoryMap != this) {
+      throw new IllegalArgumentException("Snapshot belongs to another memory map");
+    }
+
+    if (snapshot == activeSnapshot) {
+      for (int i = 0; i < dirtyCount; i++) {
+        int page = dirtyPages[i];
+        restorePage(page, snapshot.pages[page], listener);
+        guard(page);
+      }
+    } else {
+      // Every page of an older snapshot has been copied, but any of them may differ
+      for (int page = 0; page < PAGE_COUNT; page++) {
+        if (snapshot.covered[page]) {
+          restorePage(page, snapshot.pages[page], listener);
+        }
+      }
+      detachActiveSnapshot();
+      activeSnapshot = snapshot;
+      guardAll();
+    }
+    clearDirty();
+  }
+
+  /**
+   * Starts recording which RAM pages are modified, forgetting earlier modifications.
+   * Like a snapshot, this only costs a trap on the first write to each page.
+   */
+  public void trackModifications() {
+    Arrays.fill(modified, false);
+    guardAll();
+  }
+
+  /**
+   * @return The RAM pages that were modified since {@link #trackModifications()} was last
+   * called, in ascending order.
+   */
+  public int[] modifiedPages() {
+    int count = 0;
+    int[] pages = new int[PAGE_COUNT];
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      if (modified[page]) {
+        pages[count++] = page;
+      }
+    }
+    return Arrays.copyOf(pages, count);
+  }
+
+  /**
+   * @param page The page number, {@code address >>> PAGE_SHIFT}.
+   * @return True if the page is plain RAM, which snapshots and modification tracking cover.
+   */
+  public boolean isRamPage(int page) {
+    return ramPages[page] != null;
+  }
+
+  /**
+   * Checks that snapshots and save states cover all RAM in the map. They only cover RAM
+   * pages with a backing array, so an {@link OffHeapRAM}, or a RAM region that shares a
+   * page with other regions, would be left out of them without notice.
+   *
+   * @throws IllegalStateException If some RAM is not covered.
+   */
+  public void checkRamCovered() {
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      if (ramPages[page] != null) {
+        continue;
+      }
+      MemoryRegion entry = pageTable[page];
+      List<MemoryRegion> regions = (entry.memory instanceof SubPageDispatcher dispatcher)
+          ? dispatcher.regions : List.of(entry);
+      for (MemoryRegion region : regions) {
+        Memory memory = region.memory;
+        if (memory instanceof RAM || memory instanceof SparseRAM || memory instanceof OffHeapRAM) {
+          throw new IllegalStateException("Snapshots and save states do not cover the " + memory.getClass().getSimpleName()
+              + " at 0x" + Integer.toHexString(page << PAGE_SHIFT));
+        }
+      }
+    }
+  }
+
+  // Copies the pages the active snapshot still shares, so it no longer depends on guarding
+  private void detachActiveSnapshot() {
+    if (activeSnapshot != null) {
+      for (int page = 0; page < PAGE_COUNT; page++) {
+        if (activeSnapshot.covered[page] && activeSnapshot.pages[page] == null) {
+          activeSnapshot.pages[page] = copyPage(page);
+        }
+      }
+    }
+  }
+
+  private void clearDirty() {
+    for (int i = 0; i < dirtyCount; i++) {
+      dirty[dirtyPages[i]] = false;
+    }
+    dirtyCount = 0;
+  }
+
+  private void guard(int page) {
+    writePages[page] = null;
+    guarded[page] = true;
+  }
+
+  private void guardAll() {
+    for (int page = 0; page < PAGE_COUNT; page++) {
+      if (ramPages[page] != null) {
+        guard(page);
+      }
+    }
+  }
+
+  // Called before a write to the given page reaches its memory
+  private void beforeWrite(int page) {
+    if (!guarded[page]) {
+      return;
+    }
+    guarded[page] = false;
+    modified[page] = true;
+
+    if (activeSnapshot != null && activeSnapshot.covered[page] && !dirty[page]) {
+      if (activeSnapshot.pages[page] == null) {
+        activeSnapshot.pages[page] = copyPage(page);
+      }
+      dirty[page] = true;
+      dirtyPages[dirtyCount++] = page;
+    }
+
+    if (ramPages[page] == SparseRAM.ZERO_PAGE) {
+      allocatePage(page);
+    }
+    writePages[page] = ramPages[page];  // Let further writes go straight to the array
+  }
+
+  // Gives a sparse page that is still the shared zero page an array of its own
+  private byte[] allocatePage(int page) {
+    MemoryRegion region = pageTable[page];
+    byte[] array = ((SparseRAM) region.memory).allocatePage((page << PAGE_SHIFT) - region.startAddress);
+    readPages[page] = array;
+    ramPages[page] = array;
+    return array;
+  }
+
+  private byte[] copyPage(int page) {
+    if (ramPages[page] == SparseRAM.ZERO_PAGE) {
+      return SparseRAM.ZERO_PAGE;  // Saved pages are never written, so it can be shared
+    }
+    int offset = (page << PAGE_SHIFT) - pageBases[page];
+    return Arrays.copyOfRange(ramPages[page], offset, offset + PAGE_SIZE);
+  }
+
+  // Copies a saved page back, reporting only the bytes that actually differ
+  private void restorePage(int page, byte[] saved, RestoreListener listener) {
+    byte[] live = ramPages[page];
+    int offset = (page << PAGE_SHIFT) - pageBases[page];
+    int start = 0;
+    while (true) {
+      int mismatch = Arrays.mismatch(live, offset + start, offset + PAGE_SIZE, saved, start, PAGE_SIZE);
+      if (mismatch < 0) {
+        return;
+      }
+      start += mismatch;
+      modified[page] = true;
+      if (live == SparseRAM.ZERO_PAGE) {
+        live = allocatePage(page);  // Still guarded, so writePages is set by the first write
+      }
+
+      // Extend the range over the following differing bytes
+      int end = start + 1;
+      while (end < PAGE_SIZE && live[offset + end] != saved[end]) {
+        end++;
+      }
+      System.arraycopy(saved, start, live, offset + start, end - start);
+      if (listener != null) {
+        listener.restored((page << PAGE_SHIFT) + start, end - start);
+      }
+      start = end;
+    }
+  }
+
+  @Override
+  public byte[][] readPages() {
+    return readPages;
+  }
+
+  @Override
+  public byte[][] writePages() {
+    return writePages;
+  }
+
+  @Override
+  public int[] pageBases() {
+    return pageBases;
+  }
+
+  @Override
+  public long[][] dirtyBitsets() {
+    return dirtyBitsets;
+  }
+
+  @Override
+  public int[] dirtyBases() {
+    return dirtyBases;
+  }
+
+  private MemoryRegion findRegion(int address) {
+    int page = address >>> PAGE_SHIFT;
+    if (page >= PAGE_COUNT) {
+      throw unmapped(address);
+    }
+    return pageTable[page];
+  }
+
+  private static IllegalArgumentException unmapped(int address) {
+    return new IllegalArgumentException("No memory region mapped for address: " + address);
+  }
+
+  @Override
+  public byte read(int address) {
+    MemoryRegion region = findRegion(address);
+    return region.memory.read(address - region.startAddress);
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    MemoryRegion region = findRegion(address);
+    beforeWrite(address >>> PAGE_SHIFT);
+    region.memory.write(address - region.startAddress, value);
+  }
+
+  @Override
+  public int read24(int address) {
+    MemoryRegion region = findRegion(address);
+    if (region.contains(address + 2)) {
+      return region.memory.read24(address - region.startAddress);
+    }
+    return DirectMemory.super.read24(address);  // Spans two regions, or a shared page
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    MemoryRegion region = findRegion(address);
+    if (region.contains(address + 2)) {
+      beforeWrite(address >>> PAGE_SHIFT);
+      beforeWrite((address + 2) >>> PAGE_SHIFT);
+      region.memory.write24(address - region.startAddress, value);
+    } else {
+      DirectMemory.super.write24(address, value);  // Spans two regions, or a shared page
+    }
+  }
+
+  @Override
+  public void readBlock(int address, byte[] buffer, int offset, int length) {
+    while (length > 0) {
+      MemoryRegion region = findRegion(address);
+      int chunk = chunkLength(region, address, length);
+      region.memory.readBlock(address - region.startAddress, buffer, offset, chunk);
+      address += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    while (length > 0) {
+      MemoryRegion region = findRegion(address);
+      int chunk = chunkLength(region, address, length);
+      for (int page = address >>> PAGE_SHIFT; page <= (address + chunk - 1) >>> PAGE_SHIFT; page++) {
+        beforeWrite(page);
+      }
+      region.memory.writeBlock(address - region.startAddress, buffer, offset, chunk);
+      address += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  // Returns how many of the given bytes can be handed to the region in one block access
+  private static int chunkLength(MemoryRegion region, int address, int length) {
+    int end = region.contains(address)
+        ? region.startAddress + region.size
+        : (address | (PAGE_SIZE - 1)) + 1;  // Shared or unmapped pages resolve each byte themselves
+    return Math.min(length, end - address);
+  }
+}
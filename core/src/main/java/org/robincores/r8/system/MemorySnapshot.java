@@ -0,0 +1,36 @@
+package org.robincores.r8.system;
+
+/**
+ * The contents of the RAM pages of a {@link MemoryMap} at the time of
+ * {@link MemoryMap#snapshot()}.
+ * <p>
+ * Pages are shared with the live memory until they are written: the first write to a
+ * page after the snapshot copies the page into the snapshot, so taking a snapshot costs
+ * no copying and memory that is never written is never duplicated. Once a page has been
+ * copied the copy is kept, so writing it again after a restore costs nothing extra.
+ */
+public final class MemorySnapshot {
+  final MemoryMap memoryMap;
+  final boolean[] covered;  // The RAM pages at the time of the snapshot
+  final byte[][] pages;     // Contents of the covered pages, null while shared with the live page
+
+  MemorySnapshot(MemoryMap memoryMap, boolean[] covered) {
+    this.memoryMap = memoryMap;
+    this.covered = covered;
+    this.pages = new byte[covered.length][];
+  }
+
+  /**
+   * @return The number of pages copied so far, i.e. the memory this snapshot holds
+   * besides the live memory.
+   */
+  public int copiedPageCount() {
+    int count = 0;
+    for (byte[] page : pages) {
+      if (page != null && page != SparseRAM.ZERO_PAGE) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,111 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.Memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RAM held outside the Java heap, either in native memory or in a memory-mapped image
+ * file. Its contents neither count against the heap limit nor get scanned by the GC, and
+ * a file-backed region keeps its contents across restarts without an explicit save.
+ * <p>
+ * The CPU accesses these pages through read() and write() rather than directly.
+ * Snapshots and save states do not cover them, so {@link MemoryMap#snapshot()} and
+ * {@link SaveStateFile} throw an IllegalStateException while one is mapped. Only the
+ * System RAM of an {@link R824System} can be off-heap; its VRAM is always a
+ * {@link VideoRAM} on the heap.
+ */
+public class OffHeapRAM implements Memory {
+  private final ByteBuffer buffer;
+  private final boolean fileBacked;
+
+  private OffHeapRAM(ByteBuffer buffer, boolean fileBacked) {
+    this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    this.fileBacked = fileBacked;
+  }
+
+  /**
+   * Allocates zeroed native memory. It is released when the region is garbage collected.
+   *
+   * @param size The size of the region in bytes.
+   * @return The region.
+   */
+  public static OffHeapRAM allocate(int size) {
+    return new OffHeapRAM(ByteBuffer.allocateDirect(size), false);
+  }
+
+  /**
+   * Maps an image file into memory, creating it or growing it with zeros to the given size
+   * if needed. Writes reach the file when the OS flushes the pages or on {@link #force()}.
+   *
+   * @param file The image file.
+   * @param size The size of the region in bytes.
+   * @return The region.
+   * @throws IOException If the file cannot be opened or mapped.
+   */
+  public static OffHeapRAM map(Path file, int size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed
+      return new OffHeapRAM(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), true);
+    }
+  }
+
+  /**
+   * @return The size of the region in bytes.
+   */
+  public int getSize() {
+    return buffer.capacity();
+  }
+
+  public boolean isFileBacked() {
+    return fileBacked;
+  }
+
+  /**
+   * Writes the modified contents of a file-backed region to the file; does nothing for
+   * native memory.
+   */
+  public void force() {
+    if (buffer instanceof MappedByteBuffer mapped) {
+      mapped.force();
+    }
+  }
+
+  @Override
+  public byte read(int address) {
+    return buffer.get(address);
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    buffer.put(address, value);
+  }
+
+  @Override
+  public int read24(int address) {
+    return (buffer.getShort(address) & 0xFFFF) | (buffer.get(address + 2) & 0xFF) << 16;
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    buffer.putShort(address, (short) value);
+    buffer.put(address + 2, (byte) (value >> 16));
+  }
+
+  @Override
+  public void readBlock(int address, byte[] buffer, int offset, int length) {
+    this.buffer.get(address, buffer, offset, length);
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    this.buffer.put(address, buffer, offset, length);
+  }
+}
@@ -0,0 +1,321 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.ExecutionMode;
+import org.robincores.r8.cpu.Memory;
+import org.robincores.r8.cpu.R824;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class R824System {
+  public static final int SYSTEM_RAM_SIZE = 10 * 1024 * 1024;
+  public static final int VRAM_SIZE = 1 * 1024 * 1024;
+
+  private MemoryMap memoryMap;
+  private R824 cpu;
+  private DeviceScheduler scheduler;
+  TimerDevice timer;
+  private Memory systemRAM;
+  private VideoRAM vram;
+  private VideoDevice video;
+  private TextDevice text;
+
+  private volatile boolean running;
+  private volatile Thread runThread;
+
+  // Interrupts raised by other threads, delivered to the CPU by the run loop
+  private final AtomicInteger externalInterrupts = new AtomicInteger();
+
+  private ClockPacer pacer;  // Null when running as fast as the host allows
+
+  // Pages of the System RAM and VRAM are only allocated when the guest writes them, so a
+  // host can run many systems that each use a fraction of their RAM
+  public R824System() {
+    this(new SparseRAM(SYSTEM_RAM_SIZE));
+  }
+
+  // Constructor to supply the System RAM, e.g. an OffHeapRAM to keep large or persistent
+  // memory off the Java heap. It must be a RAM, SparseRAM or OffHeapRAM of at least
+  // SYSTEM_RAM_SIZE bytes. VRAM is always an on-heap VideoRAM, which records the writes
+  // the display has to redraw, so only the System RAM can be moved off the heap.
+  // Snapshots and save states do not cover an OffHeapRAM and refuse to run with one.
+  public R824System(Memory systemRAM) {
+    long size = memorySize(systemRAM);
+    if (size < SYSTEM_RAM_SIZE) {
+      throw new IllegalArgumentException((size < 0)
+          ? "System RAM of unknown size: " + systemRAM.getClass().getName()
+          : "System RAM holds " + size + " bytes, " + SYSTEM_RAM_SIZE + " are mapped");
+    }
+    this.systemRAM = systemRAM;
+    this.vram = new VideoRAM(VRAM_SIZE);
+    memoryMap = new MemoryMap();
+    configure();
+  }
+
+  // Method to configure the memory map of the system
+  private void configure() {
+    // 10MB System RAM, mapped at 0x400000
+
+    // Load the 64KB Boot ROM from a file
+    //ROM bootROM = new ROM(new byte[]{/* Boot ROM data */});  // 64KB Boot ROM
+
+    // 4MB Cartridge ROM or RAM Expansion (can be used for loading cartridges or additional RAM)
+    //ROM cartridgeROM = new ROM(new byte[]{/* Cartridge ROM data or empty expansion */});  // 4MB Cartridge ROM
+
+    // 1MB VRAM for video
+
+    // Initialize the CPU with the configured memory map
+    cpu = new R824(memoryMap);
+
+    // Devices schedule their events in CPU cycles
+    scheduler = new DeviceScheduler(cpu);
+
+    // Timer Device
+    timer = new TimerDevice(cpu, scheduler);
+
+    // Text display, and video output from a framebuffer at the start of VRAM
+    text = new TextDevice();
+    video = new VideoDevice(cpu, scheduler, vram, text);
+    VideoDevice.writeDefaultPalette(vram);
+
+    // Map ROM, RAM, VRAM, and IO regions in the memory map
+    //memoryMap.mapRegion(0x000000, 64 * 1024, bootROM);  // 64KB Boot ROM
+    //memoryMap.mapRegion(0x010000, 4 * 1024 * 1024, cartridgeROM);  // 4MB Cartridge ROM / Expansion
+    //memoryMap.mapRegion(0x400000, 10 * 1024 * 1024, systemRAM);  // 10MB System RAM
+    memoryMap.mapRegion(0x000000, SYSTEM_RAM_SIZE, systemRAM);  // 1MB System RAM
+    memoryMap.mapRegion(0xE00000, VRAM_SIZE, vram);  // 1MB VRAM
+
+    // 1MB IO + Audio Buffers
+    memoryMap.mapRegion(0xF00000, 8, timer);  // Timer mapped to address 0xF00000
+    memoryMap.mapRegion(0xF01000, TextDevice.SIZE, text);  // Text display page at 0xF01000
+    memoryMap.mapRegion(0xF02000, VideoDevice.REGISTERS_SIZE, video);  // Frame counter and beam at 0xF02000
+  }
+
+  // Method to load a binary program into RAM at the given address
+  public void loadProgram(String filePath, int startAddress) throws IOException {
+    byte[] program = Files.readAllBytes(Path.of(filePath));
+    memoryMap.writeBlock(startAddress, program, 0, program.length);
+    cpu.invalidateDecodeCache();
+  }
+
+  // Method to select how the CPU fetches and decodes instructions
+  public void setExecutionMode(ExecutionMode mode) {
+    cpu.setExecutionMode(mode);
+  }
+
+  // Method to redirect the guest's console, e.g. to capture the output of one of many systems
+  public void setConsole(PrintStream output, InputStream input) {
+    cpu.setConsole(output);
+    cpu.setConsoleInput(input);
+  }
+
+  // Method to pace the guest to a fixed clock frequency in Hz, or 0 to run unpaced
+  public void setClockFrequency(long frequency) {
+    pacer = (frequency > 0) ? new ClockPacer(frequency) : null;
+    video.setFrameCycles((frequency > 0) ? frequency / VideoDevice.FRAME_RATE : VideoDevice.DEFAULT_FRAME_CYCLES);
+  }
+
+  // The pacer of the current clock frequency with its drift statistics, or null if unpaced
+  public ClockPacer getClockPacer() {
+    return pacer;
+  }
+
+  public R824 getCpu() {
+    return cpu;
+  }
+
+  public MemoryMap getMemoryMap() {
+    return memoryMap;
+  }
+
+  public VideoDevice getVideo() {
+    return video;
+  }
+
+  public TextDevice getText() {
+    return text;
+  }
+
+  // The size of the RAM and VRAM the guest sees, in bytes
+  public long getNominalMemorySize() {
+    return (long) SYSTEM_RAM_SIZE + VRAM_SIZE;
+  }
+
+  // The RAM and VRAM actually allocated so far, on or off the heap, in bytes; may be
+  // called from any thread
+  public long getResidentMemorySize() {
+    return residentSize(systemRAM, SYSTEM_RAM_SIZE) + vram.getResidentSize();
+  }
+
+  // The size of a RAM region in bytes, or -1 if it has no known size
+  private static long memorySize(Memory memory) {
+    if (memory instanceof RAM ram) {
+      return ram.getSize();
+    } else if (memory instanceof SparseRAM sparse) {
+      return sparse.getSize();
+    } else if (memory instanceof OffHeapRAM offHeap) {
+      return offHeap.getSize();
+    }
+    return -1;
+  }
+
+  private static long residentSize(Memory memory, int mappedSize) {
+    if (memory instanceof SparseRAM sparse) {
+      return sparse.getResidentSize();
+    } else if (memory instanceof OffHeapRAM offHeap) {
+      return offHeap.getSize();
+    }
+    return mappedSize;
+  }
+
+  // Method to capture the whole machine state, e.g. to reset the system between test runs.
+  // Memory is shared copy-on-write, so this is cheap however large the RAM is. Must not be
+  // called while the system is running. Throws IllegalStateException if the System RAM is
+  // an OffHeapRAM, which snapshots cannot cover.
+  public SystemSnapshot snapshot() {
+    return new SystemSnapshot(this, cpu.saveState(), timer.saveState(), video.saveState(), text.saveState(),
+        memoryMap.snapshot());
+  }
+
+  // Method to return the system to a snapshot taken from it. Only the memory pages written
+  // since the snapshot was taken or last restored are copied back, and only instructions
+  // decoded from bytes that changed are dropped. Must not be called while the system is
+  // running.
+  public void restore(SystemSnapshot snapshot) {
+    if (snapshot.system != this) {
+      throw new IllegalArgumentException("Snapshot belongs to another system");
+    }
+    memoryMap.restore(snapshot.memory, cpu::invalidateDecodeCache);
+    vram.markAllDirty();  // Restored pages are copied without going through write()
+    cpu.restoreState(snapshot.cpu);
+    timer.restoreState(snapshot.timer);
+    video.restoreState(snapshot.video);
+    text.restoreState(snapshot.text);
+    externalInterrupts.set(0);
+    startClock();
+  }
+
+  // Method to raise an interrupt from any thread, e.g. for input devices
+  public void raiseInterrupt(int interruptBit) {
+    externalInterrupts.getAndUpdate(pending -> pending | interruptBit);
+    cpu.requestStop();
+    LockSupport.unpark(runThread);
+  }
+
+  // Main loop for running the CPU until the system is stopped or the CPU halts
+  public void run() {
+    runUntil(Long.MAX_VALUE);
+  }
+
+  // Main loop for running the CPU until the system is stopped, the CPU halts, or its cycle
+  // count reaches the given limit
+  public void runUntil(long cycleLimit) {
+    running = true;
+    runThread = Thread.currentThread();
+
+    ClockPacer pacer = this.pacer;
+    if (pacer != null) {
+      pacer.start(cpu.getCycleCount());
+    }
+
+    while (running && !cpu.isHalted() && cpu.getCycleCount() < cycleLimit) {
+      deliverExternalInterrupts();
+
+      // Run the CPU in one batch up to the next device event, or the end of the time slice.
+      // A waiting CPU skips ahead to that point without executing anything.
+      long deadline = Math.min(scheduler.nextDeadline(), cycleLimit);
+      if (pacer != null) {
+        deadline = Math.min(deadline, pacer.nextSlice(cpu.getCycleCount()));
+      } else if (deadline == Long.MAX_VALUE && cpu.isWaiting()) {
+        // Nothing is scheduled, so only another thread can wake the CPU up
+        LockSupport.park(this);
+        continue;
+      }
+      cpu.runUntil(deadline);
+
+      // Let the devices whose events are due raise their interrupts
+      scheduler.runDue(cpu.getCycleCount());
+    }
+  }
+
+  // Method to stop the system
+  public void stop() {
+    running = false;
+    cpu.requestStop();
+    LockSupport.unpark(runThread);
+  }
+
+  private void deliverExternalInterrupts() {
+    int interrupts = externalInterrupts.getAndSet(0);
+    if (interrupts != 0) {
+      cpu.setInterruptPending(interrupts);
+    }
+  }
+
+  // ---
+  // Hosted execution, where a SystemHost runs the system in slices on a shared thread
+  // instead of calling run()
+
+  // Aligns the pacer with the wall clock before the first slice
+  void startClock() {
+    if (pacer != null) {
+      pacer.start(cpu.getCycleCount());
+    }
+  }
+
+  // Runs the CPU for up to cycleQuota cycles without ever blocking the thread. Returns
+  // early when the CPU halts, when it is idle with nothing scheduled, or when a paced
+  // guest gets ahead of the wall clock. An unpaced idle CPU skips ahead to its next
+  // device event without using up the quota.
+  void runSlice(long cycleQuota) {
+    long end = cpu.getCycleCount() + cycleQuota;
+    ClockPacer pacer = this.pacer;
+
+    while (!cpu.isHalted() && cpu.getCycleCount() < end) {
+      deliverExternalInterrupts();
+
+      long deadline = scheduler.nextDeadline();
+      if (cpu.isWaiting()) {
+        if (deadline == Long.MAX_VALUE) {
+          return;  // Only an external interrupt can wake the CPU up
+        }
+        if (pacer == null) {
+          cpu.runUntil(deadline);
+          scheduler.runDue(cpu.getCycleCount());
+          continue;
+        }
+      }
+      if (pacer != null) {
+        if (pacer.nanosAhead(cpu.getCycleCount()) > 0) {
+          return;
+        }
+        deadline = Math.min(deadline, pacer.nextSlice(cpu.getCycleCount()));
+      }
+      cpu.runUntil(Math.min(deadline, end));
+      scheduler.runDue(cpu.getCycleCount());
+    }
+  }
+
+  // True if the CPU waits for an interrupt that only another thread can raise. A halted
+  // CPU is not idle but finished, see SystemHost.
+  boolean isIdle() {
+    return cpu.isWaiting()
+        && scheduler.nextDeadline() == Long.MAX_VALUE
+        && externalInterrupts.get() == 0;
+  }
+
+  // True if interrupts raised by other threads are waiting to be delivered
+  boolean hasExternalInterrupts() {
+    return externalInterrupts.get() != 0;
+  }
+
+  // How long a paced guest has to wait before its next slice, 0 if it is due or unpaced
+  long nanosUntilDue() {
+    return (pacer != null) ? pacer.nanosAhead(cpu.getCycleCount()) : 0;
+  }
+}
@@ -0,0 +1,52 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.LittleEndian;
+import org.robincores.r8.cpu.Memory;
+
+public class RAM implements Memory {
+  private final byte[] ram;
+
+  public RAM(int size) {
+    ram = new byte[size];
+  }
+
+  // The size of the region in bytes
+  public int getSize() {
+    return ram.length;
+  }
+
+  // The backing array, for direct access by the CPU through MemoryMap
+  byte[] array() {
+    return ram;
+  }
+
+  @Override
+  public byte read(int address) {
+    return ram[address];
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    ram[address] = value;
+  }
+
+  @Override
+  public int read24(int address) {
+    return LittleEndian.read24(ram, address);
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    LittleEndian.write24(ram, address, value);
+  }
+
+  @Override
+  public void readBlock(int address, byte[] buffer, int offset, int length) {
+    System.arraycopy(ram, address, buffer, offset, length);
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    System.arraycopy(buffer, offset, ram, address, length);
+  }
+}
@@ -0,0 +1,50 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.LittleEndian;
+import org.robincores.r8.cpu.Memory;
+
+public class ROM implements Memory {
+  private final byte[] rom;
+
+  public ROM(byte[] data) {
+    rom = data;
+  }
+
+  // The backing array, for direct access by the CPU through MemoryMap
+  byte[] array() {
+    return rom;
+  }
+
+  @Override
+  public byte read(int address) {
+    return rom[address];
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    // ROM is read-only, so writing does nothing.
+    System.err.println("Attempted to write to ROM at address: " + address + ". This is not allowed.");
+  }
+
+  @Override
+  public int read24(int address) {
+    return LittleEndian.read24(rom, address);
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    write(address, (byte) value);  // Reported once per access
+  }
+
+  @Override
+  public void readBlock(int address, byte[] buffer, int offset, int length) {
+    System.arraycopy(rom, address, buffer, offset, length);
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    if (length > 0) {
+      write(address, buffer[offset]);  // Reported once per access
+    }
+  }
+}
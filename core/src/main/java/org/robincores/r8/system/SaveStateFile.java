@@ -0,0 +1,433 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.DirectMemory;
+import org.robincores.r8.cpu.R824;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Persists the state of an {@link R824System} in a file, so it can be resumed after the
+ * host restarts.
+ * <p>
+ * The file holds a sequence of checkpoints. The first one is complete; every later one
+ * is a delta with only the RAM pages modified since the checkpoint before it, and the
+ * state is rebuilt by applying all of them in order. All values are little-endian:
+ * <pre>
+ *   file        "R824SAVE", u32 version, checkpoint...
+ *   checkpoint  u32 body length, body, u32 CRC-32 of the body
+ *   body        u8 kind (0 full, 1 delta), CPU state, timer state, video state,
+ *               text display page,
+ *               RAM page bitmap of PAGE_COUNT bits (full checkpoints only),
+ *               u32 page count, page entries, page data
+ *   page entry  u16 page number, u8 encoding (0 zero, 1 raw, 2 deflate), u8 0, u32 data length
+ * </pre>
+ * Full checkpoints leave out all-zero pages, deltas list them with encoding 0. Pages are
+ * compressed in parallel, and loading maps the file into memory instead of reading it.
+ * A checkpoint with a bad length or CRC, e.g. because the host died while appending it,
+ * ends the file, and the next save overwrites it. Files of earlier versions, which lack
+ * the video state (version 2) or also the text display page (version 1), can still be
+ * loaded.
+ */
+public class SaveStateFile {
+  public static final int VERSION = 3;
+
+  private static final byte[] MAGIC = "R824SAVE".getBytes(StandardCharsets.US_ASCII);
+  private static final int HEADER_SIZE = MAGIC.length + 4;
+
+  private static final int FULL = 0;
+  private static final int DELTA = 1;
+
+  private static final int ENCODING_ZERO = 0;
+  private static final int ENCODING_RAW = 1;
+  private static final int ENCODING_DEFLATE = 2;
+
+  private static final int PAGE_SIZE = MemoryMap.PAGE_SIZE;
+  private static final int PAGE_COUNT = DirectMemory.PAGE_COUNT;
+  private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+  private static final ThreadLocal<Deflater> DEFLATER =
+      ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+  private final R824System system;
+  private final Path path;
+  private long validLength = -1;  // End of the last valid checkpoint, -1 until saved or loaded
+
+  // One page as stored in a checkpoint
+  private record EncodedPage(int page, int encoding, byte[] data) {
+  }
+
+  /**
+   * @param system The system to save and load.
+   * @param path   The save-state file.
+   */
+  public SaveStateFile(R824System system, Path path) {
+    this.system = system;
+    this.path = path;
+  }
+
+  /**
+   * Saves the current state of the system. The first save writes a new file with a full
+   * checkpoint; later saves, or saves after {@link #load()}, append a delta with the
+   * pages modified since. Must not be called while the system is running.
+   *
+   * @throws IOException           If the file cannot be written.
+   * @throws IllegalStateException If the system has RAM that save states cannot cover,
+   *                               such as an {@link OffHeapRAM}.
+   */
+  public void save() throws IOException {
+    MemoryMap memoryMap = system.getMemoryMap();
+    memoryMap.checkRamCovered();
+    boolean full = validLength < 0;
+
+    int[] pages;
+    if (full) {
+      pages = IntStream.range(0, PAGE_COUNT).filter(memoryMap::isRamPage).toArray();
+    } else {
+      pages = memoryMap.modifiedPages();
+    }
+
+    // Read the pages before modifications are tracked from here on, then encode them
+    byte[][] contents = new byte[pages.length][];
+    for (int i = 0; i < pages.length; i++) {
+      contents[i] = new byte[PAGE_SIZE];
+      memoryMap.readBlock(pages[i] << DirectMemory.PAGE_SHIFT, contents[i], 0, PAGE_SIZE);
+    }
+    memoryMap.trackModifications();
+
+    EncodedPage[] encoded = IntStream.range(0, pages.length).parallel()
+        .mapToObj(i -> encode(pages[i], contents[i]))
+        .filter(page -> !full || page.encoding() != ENCODING_ZERO)
+        .toArray(EncodedPage[]::new);
+
+    ByteBuffer body = encodeBody(full, system.getCpu().saveState(), system.timer.saveState(),
+        system.getVideo().saveState(), system.getText().saveState(), full ? pages : null, encoded);
+    CRC32 crc = new CRC32();
+    crc.update(body.duplicate());
+
+    ByteBuffer checkpoint = ByteBuffer.allocate(4 + body.remaining() + 4).order(ByteOrder.LITTLE_ENDIAN);
+    checkpoint.putInt(body.remaining()).put(body).putInt((int) crc.getValue()).flip();
+
+    if (full) {
+      // Write a new file next to the old one and replace it in one step
+      Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(VERSION).flip();
+        writeFully(channel, header);
+        writeFully(channel, checkpoint);
+        channel.force(true);
+        validLength = channel.size();
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } else {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(validLength);  // Drop a damaged checkpoint left by an earlier crash
+        channel.position(validLength);
+        writeFully(channel, checkpoint);
+        channel.force(true);
+        validLength = channel.size();
+      }
+    }
+  }
+
+  /**
+   * Replaces the state of the system with the one in the file. Must not be called while
+   * the system is running.
+   *
+   * @throws IOException           If the file cannot be read, is not a save state, or was saved
+   *                               from a system with a different memory map.
+   * @throws IllegalStateException If the system has RAM that save states cannot cover,
+   *                               such as an {@link OffHeapRAM}.
+   */
+  public void load() throws IOException {
+    MemoryMap memoryMap = system.getMemoryMap();
+    memoryMap.checkRamCovered();
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      file.order(ByteOrder.LITTLE_ENDIAN);
+
+      byte[] magic = new byte[MAGIC.length];
+      if (file.limit() >= HEADER_SIZE) {
+        file.get(0, magic);
+      }
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not an R824 save state: " + path);
+      }
+      int version = file.getInt(MAGIC.length);
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported save-state version " + version + ": " + path);
+      }
+
+      // Where the latest contents of each page are: -1 if not saved, else the entry offset
+      int[] entries = new int[PAGE_COUNT];
+      Arrays.fill(entries, -1);
+      int[] dataOffsets = new int[PAGE_COUNT];
+
+      R824.State cpuState = null;
+      TimerDevice.State timerState = null;
+      VideoDevice.State videoState = null;
+      TextDevice.State textState = null;
+      int position = HEADER_SIZE;
+      CRC32 crc = new CRC32();
+
+      while (file.limit() - position >= 8) {
+        int length = file.getInt(position);
+        if (length <= 0 || length > file.limit() - position - 8) {
+          break;
+        }
+        crc.reset();
+        crc.update(file.slice(position + 4, length));
+        if ((int) crc.getValue() != file.getInt(position + 4 + length)) {
+          break;
+        }
+
+        ByteBuffer body = file.slice(position + 4, length).order(ByteOrder.LITTLE_ENDIAN);
+        int kind = body.get();
+        if ((kind == FULL) != (cpuState == null)) {
+          throw new IOException("Save state does not start with a full checkpoint: " + path);
+        }
+        cpuState = getCpuState(body);
+        timerState = getTimerState(body);
+        if (version >= 3) {
+          videoState = getVideoState(body);
+        }
+        if (version >= 2) {
+          textState = getTextState(body);
+        }
+
+        if (kind == FULL) {
+          // Pages of the full checkpoint that are not listed are zero
+          byte[] bitmap = new byte[PAGE_COUNT / 8];
+          body.get(bitmap);
+          for (int page = 0; page < PAGE_COUNT; page++) {
+            boolean saved = (bitmap[page >>> 3] & (1 << (page & 7))) != 0;
+            if (saved != memoryMap.isRamPage(page)) {
+              throw new IOException("Save state does not match the memory map: " + path);
+            }
+            entries[page] = saved ? Integer.MAX_VALUE : -1;  // Zero unless listed below
+          }
+        }
+
+        int pageCount = body.getInt();
+        int dataOffset = position + 4 + body.position() + 8 * pageCount;
+        for (int i = 0; i < pageCount; i++) {
+          int entry = position + 4 + body.position();
+          int page = Short.toUnsignedInt(body.getShort());
+          body.position(body.position() + 2);
+          int dataLength = body.getInt();
+          if (!memoryMap.isRamPage(page)) {
+            throw new IOException("Save state does not match the memory map: " + path);
+          }
+          entries[page] = entry;
+          dataOffsets[page] = dataOffset;
+          dataOffset += dataLength;
+        }
+        position += 8 + length;
+      }
+      if (cpuState == null) {
+        throw new IOException("Save state holds no valid checkpoint: " + path);
+      }
+
+      // Decode the saved pages in parallel, then copy them into memory. Zero pages that
+      // are already zero are left alone, so sparse RAM stays unallocated.
+      int[] pages = IntStream.range(0, PAGE_COUNT).filter(page -> entries[page] >= 0).toArray();
+      byte[][] contents = new byte[pages.length][];
+      try {
+        IntStream.range(0, pages.length).parallel().forEach(i -> {
+          int page = pages[i];
+          byte[] content = (entries[page] == Integer.MAX_VALUE) ? ZERO_PAGE
+              : decode(file, entries[page], dataOffsets[page]);
+          if (content == ZERO_PAGE) {
+            byte[] current = new byte[PAGE_SIZE];
+            memoryMap.readBlock(page << DirectMemory.PAGE_SHIFT, current, 0, PAGE_SIZE);
+            content = Arrays.equals(current, ZERO_PAGE) ? null : ZERO_PAGE;
+          }
+          contents[i] = content;
+        });
+      } catch (IllegalStateException e) {
+        throw new IOException("Damaged page in save state: " + path, e);
+      }
+      for (int i = 0; i < pages.length; i++) {
+        if (contents[i] == null) {
+          continue;
+        }
+        memoryMap.writeBlock(pages[i] << DirectMemory.PAGE_SHIFT, contents[i], 0, PAGE_SIZE);
+      }
+
+      R824 cpu = system.getCpu();
+      cpu.invalidateDecodeCache();
+      cpu.restoreState(cpuState);
+      system.timer.restoreState(timerState);
+      if (textState != null) {
+        system.getText().restoreState(textState);
+      }
+      if (videoState != null) {
+        system.getVideo().restoreState(videoState);
+      } else {
+        system.getVideo().resync();
+      }
+      memoryMap.trackModifications();
+      validLength = position;
+    }
+  }
+
+  private static EncodedPage encode(int page, byte[] content) {
+    if (Arrays.equals(content, ZERO_PAGE)) {
+      return new EncodedPage(page, ENCODING_ZERO, new byte[0]);
+    }
+
+    Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setInput(content);
+    deflater.finish();
+    byte[] buffer = new byte[PAGE_SIZE];
+    int length = deflater.deflate(buffer);
+    if (!deflater.finished()) {
+      return new EncodedPage(page, ENCODING_RAW, content);  // Does not compress
+    }
+    return new EncodedPage(page, ENCODING_DEFLATE, Arrays.copyOf(buffer, length));
+  }
+
+  private static byte[] decode(ByteBuffer file, int entry, int dataOffset) {
+    int encoding = file.get(entry + 2);
+    int length = file.getInt(entry + 4);
+    if (encoding == ENCODING_ZERO) {
+      return ZERO_PAGE;
+    }
+    byte[] content = new byte[PAGE_SIZE];
+    switch (encoding) {
+      case ENCODING_RAW -> file.get(dataOffset, content);
+      case ENCODING_DEFLATE -> {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(file.slice(dataOffset, length));
+        try {
+          if (inflater.inflate(content) != PAGE_SIZE || !inflater.finished()) {
+            throw new IllegalStateException("Page does not inflate to " + PAGE_SIZE + " bytes");
+          }
+        } catch (DataFormatException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      default -> throw new IllegalStateException("Unknown page encoding " + encoding);
+    }
+    return content;
+  }
+
+  private static ByteBuffer encodeBody(boolean full, R824.State cpu, TimerDevice.State timer,
+                                       VideoDevice.State video, TextDevice.State text, int[] ramPages,
+                                       EncodedPage[] pages) {
+    int size = 1 + 128 + 16 + 24 + TextDevice.SIZE + (full ? PAGE_COUNT / 8 : 0) + 4 + 8 * pages.length;
+    for (EncodedPage page : pages) {
+      size += page.data().length;
+    }
+
+    ByteBuffer body = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    body.put((byte) (full ? FULL : DELTA));
+    putCpuState(body, cpu);
+    putTimerState(body, timer);
+    putVideoState(body, video);
+    body.put(text.screen());
+    if (full) {
+      byte[] bitmap = new byte[PAGE_COUNT / 8];
+      for (int page : ramPages) {
+        bitmap[page >>> 3] |= (byte) (1 << (page & 7));
+      }
+      body.put(bitmap);
+    }
+
+    body.putInt(pages.length);
+    for (EncodedPage page : pages) {
+      body.putShort((short) page.page()).put((byte) page.encoding()).put((byte) 0).putInt(page.data().length);
+    }
+    for (EncodedPage page : pages) {
+      body.put(page.data());
+    }
+    return body.flip();
+  }
+
+  // The CPU state takes 128 bytes
+  private static void putCpuState(ByteBuffer buffer, R824.State state) {
+    buffer.putInt(state.aReg()).putInt(state.bReg()).putInt(state.cReg()).putInt(state.iPtr());
+    for (int register : state.wksp()) {
+      buffer.putInt(register);
+    }
+    buffer.putInt(state.mip()).putInt(state.mie()).putInt(state.currentInterrupt()).putInt(state.exitCode());
+    buffer.put((byte) (state.interruptsEnabled() ? 1 : 0))
+        .put((byte) (state.halted() ? 1 : 0))
+        .put((byte) (state.waiting() ? 1 : 0))
+        .put((byte) (state.exited() ? 1 : 0))
+        .putInt(0);
+    buffer.putLong(state.cycleCount()).putLong(state.instructionCount());
+  }
+
+  private static R824.State getCpuState(ByteBuffer buffer) {
+    int aReg = buffer.getInt(), bReg = buffer.getInt(), cReg = buffer.getInt(), iPtr = buffer.getInt();
+    int[] wksp = new int[16];
+    for (int i = 0; i < wksp.length; i++) {
+      wksp[i] = buffer.getInt();
+    }
+    int mip = buffer.getInt(), mie = buffer.getInt(), currentInterrupt = buffer.getInt(), exitCode = buffer.getInt();
+    boolean interruptsEnabled = buffer.get() != 0, halted = buffer.get() != 0;
+    boolean waiting = buffer.get() != 0, exited = buffer.get() != 0;
+    buffer.getInt();
+    long cycleCount = buffer.getLong(), instructionCount = buffer.getLong();
+    return new R824.State(aReg, bReg, cReg, iPtr, wksp, interruptsEnabled, mip, mie, currentInterrupt,
+        halted, waiting, exited, exitCode, cycleCount, instructionCount);
+  }
+
+  // The timer state takes 16 bytes
+  private static void putTimerState(ByteBuffer buffer, TimerDevice.State state) {
+    buffer.putInt(state.mtime()).putInt(state.mtimecmp()).putLong(state.lastUpdate());
+  }
+
+  private static TimerDevice.State getTimerState(ByteBuffer buffer) {
+    return new TimerDevice.State(buffer.getInt(), buffer.getInt(), buffer.getLong());
+  }
+
+  // The video state takes 24 bytes
+  private static void putVideoState(ByteBuffer buffer, VideoDevice.State state) {
+    buffer.putLong(state.frameNumber()).putLong(state.nextVblank())
+        .put((byte) state.control()).put((byte) state.status()).put((byte) state.lineCompare()).put((byte) 0)
+        .putInt(0);
+  }
+
+  private static VideoDevice.State getVideoState(ByteBuffer buffer) {
+    long frameNumber = buffer.getLong(), nextVblank = buffer.getLong();
+    int control = buffer.get() & 0xFF, status = buffer.get() & 0xFF, lineCompare = buffer.get() & 0xFF;
+    buffer.get();
+    buffer.getInt();
+    return new VideoDevice.State(frameNumber, nextVblank, control, status, lineCompare);
+  }
+
+  // The text display page takes TextDevice.SIZE bytes
+  private static TextDevice.State getTextState(ByteBuffer buffer) {
+    byte[] screen = new byte[TextDevice.SIZE];
+    buffer.get(screen);
+    return new TextDevice.State(screen);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
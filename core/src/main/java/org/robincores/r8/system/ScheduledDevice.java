@@ -0,0 +1,16 @@
+package org.robincores.r8.system;
+
+/**
+ * A device that needs to act at a specific CPU cycle, e.g. to raise an interrupt.
+ * Devices register with a {@link DeviceScheduler} and are called back once the CPU
+ * has run up to the deadline they scheduled.
+ */
+public interface ScheduledDevice {
+
+  /**
+   * Called when the CPU cycle count has reached the device's scheduled deadline. The
+   * device is no longer scheduled at this point and has to schedule its next event
+   * itself, if it has one.
+   */
+  void onDeadline();
+}
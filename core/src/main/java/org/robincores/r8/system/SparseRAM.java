@@ -0,0 +1,124 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.DirectMemory;
+import org.robincores.r8.cpu.LittleEndian;
+import org.robincores.r8.cpu.Memory;
+
+import java.util.Arrays;
+
+/**
+ * RAM that allocates its pages on the first write. Until then a page reads as zero from a
+ * single page shared by all instances, so a guest that touches a few hundred KB of a large
+ * region only costs that much heap.
+ * <p>
+ * Pages have the size of MemoryMap pages. When the region is mapped at a page boundary,
+ * the CPU reads every page directly from its array, the shared zero page included, and
+ * writes it directly once it has been allocated.
+ */
+public class SparseRAM implements Memory {
+  static final byte[] ZERO_PAGE = new byte[MemoryMap.PAGE_SIZE];
+
+  private static final int PAGE_SHIFT = DirectMemory.PAGE_SHIFT;
+  private static final int PAGE_SIZE = MemoryMap.PAGE_SIZE;
+  private static final int OFFSET_MASK = PAGE_SIZE - 1;
+
+  private final int size;
+  private final byte[][] pages;  // Null until the page is written
+  private volatile int allocatedPages;
+
+  /**
+   * @param size The size of the region in bytes.
+   */
+  public SparseRAM(int size) {
+    this.size = size;
+    pages = new byte[(size + PAGE_SIZE - 1) >>> PAGE_SHIFT][];
+  }
+
+  /**
+   * @return The size of the region in bytes.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return The bytes actually allocated, a whole number of pages. May be read from any
+   * thread.
+   */
+  public long getResidentSize() {
+    return (long) allocatedPages * PAGE_SIZE;
+  }
+
+  // The array holding the page at the given offset, the shared zero page until it is allocated
+  byte[] page(int offset) {
+    byte[] page = pages[offset >>> PAGE_SHIFT];
+    return (page != null) ? page : ZERO_PAGE;
+  }
+
+  // The array holding the page at the given offset, allocated if needed
+  byte[] allocatePage(int offset) {
+    int index = offset >>> PAGE_SHIFT;
+    byte[] page = pages[index];
+    if (page == null) {
+      page = new byte[PAGE_SIZE];
+      pages[index] = page;
+      allocatedPages++;
+    }
+    return page;
+  }
+
+  @Override
+  public byte read(int address) {
+    byte[] page = pages[address >>> PAGE_SHIFT];
+    return (page != null) ? page[address & OFFSET_MASK] : 0;
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    allocatePage(address)[address & OFFSET_MASK] = value;
+  }
+
+  @Override
+  public int read24(int address) {
+    if ((address & OFFSET_MASK) <= PAGE_SIZE - 3) {
+      return LittleEndian.read24(page(address), address & OFFSET_MASK);
+    }
+    return Memory.super.read24(address);  // Spans two pages
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    if ((address & OFFSET_MASK) <= PAGE_SIZE - 3) {
+      LittleEndian.write24(allocatePage(address), address & OFFSET_MASK, value);
+    } else {
+      Memory.super.write24(address, value);  // Spans two pages
+    }
+  }
+
+  @Override
+  public void readBlock(int address, byte[] buffer, int offset, int length) {
+    while (length > 0) {
+      int chunk = Math.min(length, PAGE_SIZE - (address & OFFSET_MASK));
+      byte[] page = pages[address >>> PAGE_SHIFT];
+      if (page != null) {
+        System.arraycopy(page, address & OFFSET_MASK, buffer, offset, chunk);
+      } else {
+        Arrays.fill(buffer, offset, offset + chunk, (byte) 0);
+      }
+      address += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    while (length > 0) {
+      int chunk = Math.min(length, PAGE_SIZE - (address & OFFSET_MASK));
+      System.arraycopy(buffer, offset, allocatePage(address), address & OFFSET_MASK, chunk);
+      address += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+}
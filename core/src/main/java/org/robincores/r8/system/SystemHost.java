@@ -0,0 +1,282 @@
+package org.robincores.r8.system;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many long-lived systems on a small pool of carrier threads instead of giving each
+ * one a thread of its own.
+ * <p>
+ * Runnable guests wait in a single FIFO run queue. A carrier takes the guest at the head,
+ * runs it for at most one cycle quota and puts it back at the tail, so every runnable
+ * guest gets the same number of cycles per round and a guest that never waits cannot
+ * starve the others. A guest that is idle, i.e. waiting in WFI with no device event
+ * scheduled, is parked off the queue until {@link Guest#raiseInterrupt(int)} is called.
+ * A paced guest that is ahead of the wall clock is parked until it is due. A guest whose
+ * CPU halts is terminated; HLT is final, so no interrupt brings it back.
+ * <p>
+ * Each guest keeps throughput and scheduling statistics that may be read from any thread.
+ */
+public class SystemHost {
+  public static final long DEFAULT_CYCLE_QUOTA = 100_000;
+
+  // Guest states
+  private static final int QUEUED = 0;      // In the run queue
+  private static final int RUNNING = 1;     // Owned by a carrier
+  private static final int PARKED = 2;      // Off the queue until woken up
+  private static final int TERMINATED = 3;  // Halted, stopped or failed
+
+  private final long cycleQuota;
+  private final LinkedBlockingQueue<Guest> runQueue = new LinkedBlockingQueue<>();
+  private final List<Guest> guests = new CopyOnWriteArrayList<>();
+  private final Thread[] carriers;
+  private final ScheduledThreadPoolExecutor timer;  // Wakes paced guests when they are due
+  private volatile boolean shutdown;
+
+  /**
+   * The statistics of one guest.
+   *
+   * @param cycles        The CPU cycles executed.
+   * @param instructions  The instructions executed.
+   * @param slices        The number of slices the guest was given.
+   * @param runNanos      The carrier time the guest used.
+   * @param maxSliceNanos The longest slice.
+   * @param queueNanos    The total time the guest waited in the run queue.
+   * @param maxQueueNanos The longest wait in the run queue.
+   * @param wakeups       The number of times the guest was woken up after being parked.
+   */
+  public record GuestStatistics(long cycles, long instructions, long slices, long runNanos,
+                                long maxSliceNanos, long queueNanos, long maxQueueNanos, long wakeups) {
+
+    public double mips() {
+      return instructions * 1e3 / Math.max(runNanos, 1);
+    }
+  }
+
+  /**
+   * A system running on the host.
+   */
+  public final class Guest {
+    private final R824System system;
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final CompletableFuture<Guest> termination = new CompletableFuture<>();
+    private volatile boolean stopRequested;
+
+    // Written by the carrier that currently owns the guest
+    private long enqueuedAt;
+    private volatile long cycles;
+    private volatile long instructions;
+    private volatile long slices;
+    private volatile long runNanos;
+    private volatile long maxSliceNanos;
+    private volatile long queueNanos;
+    private volatile long maxQueueNanos;
+    private final AtomicLong wakeups = new AtomicLong();
+
+    private Guest(R824System system) {
+      this.system = system;
+    }
+
+    public R824System getSystem() {
+      return system;
+    }
+
+    /**
+     * Raises an interrupt in the guest and wakes it up if it is parked. May be called
+     * from any thread.
+     *
+     * @param interruptBit The interrupt to raise.
+     */
+    public void raiseInterrupt(int interruptBit) {
+      system.raiseInterrupt(interruptBit);
+      wake();
+    }
+
+    /**
+     * Removes the guest from the host after its current slice. May be called from any
+     * thread.
+     */
+    public void stop() {
+      stopRequested = true;
+      wake();
+    }
+
+    /**
+     * @return A future that completes when the guest halts or is stopped, or completes
+     * exceptionally if the system failed.
+     */
+    public CompletableFuture<Guest> termination() {
+      return termination;
+    }
+
+    public boolean isTerminated() {
+      return state.get() == TERMINATED;
+    }
+
+    public GuestStatistics getStatistics() {
+      return new GuestStatistics(cycles, instructions, slices, runNanos, maxSliceNanos,
+          queueNanos, maxQueueNanos, wakeups.get());
+    }
+
+    private void wake() {
+      if (state.compareAndSet(PARKED, QUEUED)) {
+        wakeups.incrementAndGet();
+        enqueue(this);
+      }
+    }
+
+    private void terminate(Throwable error) {
+      if (state.getAndSet(TERMINATED) == TERMINATED) {
+        return;
+      }
+      guests.remove(this);
+      if (error != null) {
+        termination.completeExceptionally(error);
+      } else {
+        termination.complete(this);
+      }
+    }
+  }
+
+  /**
+   * @param carrierCount The number of carrier threads.
+   * @param cycleQuota   The number of cycles a guest may run before the next guest's turn.
+   */
+  public SystemHost(int carrierCount, long cycleQuota) {
+    if (carrierCount <= 0 || cycleQuota <= 0) {
+      throw new IllegalArgumentException("Carrier count and cycle quota must be positive");
+    }
+    this.cycleQuota = cycleQuota;
+
+    timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "r824-host-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+
+    carriers = new Thread[carrierCount];
+    for (int i = 0; i < carrierCount; i++) {
+      carriers[i] = new Thread(this::carry, "r824-carrier-" + i);
+      carriers[i].setDaemon(true);
+      carriers[i].start();
+    }
+  }
+
+  public SystemHost(int carrierCount) {
+    this(carrierCount, DEFAULT_CYCLE_QUOTA);
+  }
+
+  /**
+   * Starts running a system on the host. It must not be running anywhere else.
+   *
+   * @param system The system to run, with its program loaded.
+   * @return The handle of the guest.
+   */
+  public Guest add(R824System system) {
+    if (shutdown) {
+      throw new IllegalStateException("Host has been shut down");
+    }
+    Guest guest = new Guest(system);
+    guests.add(guest);
+    system.startClock();
+    enqueue(guest);
+    return guest;
+  }
+
+  /**
+   * @return The guests that have not terminated yet.
+   */
+  public List<Guest> getGuests() {
+    return List.copyOf(guests);
+  }
+
+  /**
+   * Stops the carriers and terminates all remaining guests.
+   */
+  public void shutdown() {
+    shutdown = true;
+    for (Thread carrier : carriers) {
+      carrier.interrupt();
+    }
+    timer.shutdownNow();
+    for (Guest guest : guests) {
+      guest.terminate(null);
+    }
+  }
+
+  private void enqueue(Guest guest) {
+    guest.enqueuedAt = System.nanoTime();
+    runQueue.add(guest);
+  }
+
+  // Main loop of a carrier thread
+  private void carry() {
+    try {
+      while (!shutdown) {
+        runGuest(runQueue.take());
+      }
+    } catch (InterruptedException e) {
+      // Shut down
+    }
+  }
+
+  private void runGuest(Guest guest) {
+    if (!guest.state.compareAndSet(QUEUED, RUNNING)) {
+      return;  // Terminated while it was queued
+    }
+
+    long start = System.nanoTime();
+    long waited = start - guest.enqueuedAt;
+    guest.queueNanos += waited;
+    guest.maxQueueNanos = Math.max(guest.maxQueueNanos, waited);
+
+    R824System system = guest.system;
+    try {
+      if (!guest.stopRequested) {
+        system.runSlice(cycleQuota);
+      }
+    } catch (RuntimeException e) {
+      guest.terminate(e);
+      return;
+    } finally {
+      long used = System.nanoTime() - start;
+      guest.slices++;
+      guest.runNanos += used;
+      guest.maxSliceNanos = Math.max(guest.maxSliceNanos, used);
+      guest.cycles = system.getCpu().getCycleCount();
+      guest.instructions = system.getCpu().getInstructionCount();
+    }
+
+    if (guest.stopRequested || system.getCpu().isHalted() || shutdown) {
+      guest.terminate(null);
+    } else if (system.isIdle()) {
+      park(guest);
+    } else {
+      long delay = system.nanosUntilDue();
+      if (delay > 0) {
+        park(guest);
+        timer.schedule(guest::wake, delay, TimeUnit.NANOSECONDS);
+      } else {
+        guest.state.set(QUEUED);
+        enqueue(guest);
+      }
+    }
+  }
+
+  private void park(Guest guest) {
+    guest.state.set(PARKED);
+
+    // A wake-up during the slice found the guest running and did nothing, so check again
+    // now that it is visible as parked
+    if (guest.system.hasExternalInterrupts() || guest.stopRequested) {
+      guest.wake();
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.R824;
+
+/**
+ * The complete state of an {@link R824System}: CPU registers and counters, device
+ * registers and a copy-on-write snapshot of memory. It can only be restored into the
+ * system it was taken from.
+ */
+public final class SystemSnapshot {
+  final R824System system;
+  final R824.State cpu;
+  final TimerDevice.State timer;
+  final VideoDevice.State video;
+  final TextDevice.State text;
+  final MemorySnapshot memory;
+
+  SystemSnapshot(R824System system, R824.State cpu, TimerDevice.State timer, VideoDevice.State video,
+                 TextDevice.State text, MemorySnapshot memory) {
+    this.system = system;
+    this.cpu = cpu;
+    this.timer = timer;
+    this.video = video;
+    this.text = text;
+    this.memory = memory;
+  }
+
+  /**
+   * @return The cycle count at which the snapshot was taken.
+   */
+  public long getCycleCount() {
+    return cpu.cycleCount();
+  }
+}
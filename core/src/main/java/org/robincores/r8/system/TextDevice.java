@@ -0,0 +1,232 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.Memory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A character-cell text display of {@link #COLUMNS} x {@link #ROWS} cells, mapped as one
+ * 4KB page of device memory.
+ * <p>
+ * Each cell is two bytes: the character, in code page 437, followed by its attribute,
+ * with the foreground color in the low nibble and the background color in the high
+ * nibble, both indexes into {@link #COLORS}. Cell (column, row) is at offset
+ * {@code 2 * (row * COLUMNS + column)}. Registers follow the cells:
+ * <pre>
+ *   0xFF0  CONTROL        bit 0: show the text display, bit 1: show the cursor
+ *   0xFF1  CURSOR_COLUMN
+ *   0xFF2  CURSOR_ROW
+ * </pre>
+ * A guest writes a character with plain stores, and each store only sets a bit for the
+ * cell. At every vsync of the {@link VideoDevice} the page is handed to the display as a
+ * complete screen, like the framebuffer, and the display only repaints the cells that
+ * changed.
+ */
+public class TextDevice implements Memory {
+  public static final int COLUMNS = 80;
+  public static final int ROWS = 25;
+  public static final int SIZE = 4096;
+
+  public static final int CONTROL = 0xFF0;
+  public static final int CURSOR_COLUMN = 0xFF1;
+  public static final int CURSOR_ROW = 0xFF2;
+
+  public static final int CONTROL_ENABLE = 0x01;
+  public static final int CONTROL_CURSOR = 0x02;
+
+  /**
+   * The 16 CGA colors the attribute nibbles select, as 0xRRGGBB.
+   */
+  public static final int[] COLORS = {
+      0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xAA5500, 0xAAAAAA,
+      0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+  };
+
+  private static final int CELL_COUNT = COLUMNS * ROWS;
+
+  private final byte[] screen = new byte[SIZE];
+  private final long[] dirtyCells = new long[(CELL_COUNT + 63) / 64];
+  private boolean registersWritten;
+
+  // Created when a display is attached
+  private volatile Handoff handoff;
+
+  /**
+   * Paints one cell of the text display.
+   */
+  public interface CellPainter {
+    /**
+     * @param column    The column of the cell.
+     * @param row       The row of the cell.
+     * @param character The character, in code page 437.
+     * @param attribute The attribute byte.
+     * @param cursor    True if the cursor is shown on this cell.
+     */
+    void paint(int column, int row, int character, int attribute, boolean cursor);
+  }
+
+  /**
+   * The rows a call to {@link #paintScreen(CellPainter)} repainted.
+   *
+   * @param firstRow The first repainted row.
+   * @param rowCount The number of rows from the first one up to the last repainted one.
+   */
+  public record Rows(int firstRow, int rowCount) {
+  }
+
+  /**
+   * The contents of the device, see {@link #saveState()}.
+   */
+  public record State(byte[] screen) {
+  }
+
+  // A copy of the page at one vsync
+  private static final class Screen {
+    final byte[] screen = new byte[SIZE];
+    final long[] changedCells = new long[(CELL_COUNT + 63) / 64];  // Since the screen the display took before
+    volatile boolean fresh;  // Published and not yet taken by the display
+  }
+
+  // The same triple buffer as for video frames, but as the page is small it is always
+  // copied in full
+  private static final class Handoff {
+    Screen back = new Screen();
+    final AtomicReference<Screen> middle = new AtomicReference<>(new Screen());
+    Screen front = new Screen();
+    boolean painted;  // False until the display painted every cell once
+  }
+
+  @Override
+  public byte read(int address) {
+    return screen[address];
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    screen[address] = value;
+    if (address < 2 * CELL_COUNT) {
+      dirtyCells[address >>> 7] |= 1L << (address >>> 1);
+    } else {
+      registersWritten = true;
+    }
+  }
+
+  /**
+   * @return A copy of the cells and registers.
+   */
+  public State saveState() {
+    return new State(screen.clone());
+  }
+
+  /**
+   * Returns the device to a state captured by {@link #saveState()}.
+   *
+   * @param state The state to restore.
+   */
+  public void restoreState(State state) {
+    System.arraycopy(state.screen(), 0, screen, 0, SIZE);
+    Arrays.fill(dirtyCells, -1L);
+    registersWritten = true;
+  }
+
+  // Starts handing screens to a display, see VideoDevice.attachDisplay()
+  void attachDisplay() {
+    if (handoff == null) {
+      handoff = new Handoff();
+    }
+  }
+
+  // Called by the video device at each vsync, on the CPU thread
+  void publishScreen() {
+    Handoff handoff = this.handoff;
+    if (handoff == null) {
+      return;
+    }
+
+    boolean changed = registersWritten;
+    for (long word : dirtyCells) {
+      changed |= word != 0;
+    }
+    if (!changed) {
+      return;  // Nothing new to show
+    }
+
+    Screen back = handoff.back;
+    System.arraycopy(screen, 0, back.screen, 0, SIZE);
+    System.arraycopy(dirtyCells, 0, back.changedCells, 0, dirtyCells.length);
+    Screen waiting = handoff.middle.get();
+    if (waiting.fresh) {
+      // The display will skip the waiting screen, so carry its changes, as for frames
+      for (int i = 0; i < dirtyCells.length; i++) {
+        back.changedCells[i] |= waiting.changedCells[i];
+      }
+    }
+    Arrays.fill(dirtyCells, 0);
+    registersWritten = false;
+
+    back.fresh = true;
+    handoff.back = handoff.middle.getAndSet(back);
+  }
+
+  /**
+   * Takes the latest complete screen and paints the cells that changed since the screen
+   * taken before it, plus the cells the cursor left or entered. The first call paints
+   * every cell. Meant to be called once per display refresh, always from the same thread,
+   * after the video device's display was attached.
+   *
+   * @param painter Paints each cell.
+   * @return The repainted rows, or null if no new screen was ready or nothing changed.
+   */
+  public Rows paintScreen(CellPainter painter) {
+    Handoff handoff = this.handoff;
+    if (handoff == null) {
+      throw new IllegalStateException("No display attached");
+    }
+    if (!handoff.middle.get().fresh) {
+      return null;
+    }
+    Screen previous = handoff.front;
+    Screen screen = handoff.middle.getAndSet(previous);
+    screen.fresh = false;
+    handoff.front = screen;
+
+    int oldCursor = cursorCell(previous.screen);
+    int newCursor = cursorCell(screen.screen);
+    boolean all = !handoff.painted;
+    handoff.painted = true;
+
+    int firstRow = ROWS;
+    int endRow = 0;
+    for (int cell = 0; cell < CELL_COUNT; cell++) {
+      if (all || (screen.changedCells[cell >>> 6] & (1L << cell)) != 0
+          || (oldCursor != newCursor && (cell == oldCursor || cell == newCursor))) {
+        int row = cell / COLUMNS;
+        painter.paint(cell % COLUMNS, row, screen.screen[2 * cell] & 0xFF, screen.screen[2 * cell + 1] & 0xFF,
+            cell == newCursor);
+        firstRow = Math.min(firstRow, row);
+        endRow = row + 1;
+      }
+    }
+    return (firstRow < endRow) ? new Rows(firstRow, endRow - firstRow) : null;
+  }
+
+  /**
+   * @return True if the screen last taken by {@link #paintScreen(CellPainter)} has the
+   * text display enabled. Must be called from the display's thread.
+   */
+  public boolean isDisplayEnabled() {
+    Handoff handoff = this.handoff;
+    return handoff != null && (handoff.front.screen[CONTROL] & CONTROL_ENABLE) != 0;
+  }
+
+  // The cell showing the cursor, or -1 if it is hidden or outside the screen
+  private static int cursorCell(byte[] screen) {
+    int column = screen[CURSOR_COLUMN] & 0xFF;
+    int row = screen[CURSOR_ROW] & 0xFF;
+    if ((screen[CONTROL] & CONTROL_CURSOR) == 0 || column >= COLUMNS || row >= ROWS) {
+      return -1;
+    }
+    return row * COLUMNS + column;
+  }
+}
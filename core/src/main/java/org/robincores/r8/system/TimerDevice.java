@@ -10,8 +10,12 @@ import org.robincores.r8.cpu.R824;
  *
  * The timer is automatically reset once an interrupt is triggered, and it will disable itself
  * until the comparison register (mtimecmp) is updated again to enable it.
+ *
+ * The timer does not tick with every instruction. Instead, mtime is brought up to date from
+ * the CPU cycle count whenever it is needed, and the cycle returned by {@link #nextDeadline()}
+ * is kept scheduled with the system's {@link DeviceScheduler}.
  */
-public class TimerDevice implements Memory {
+public class TimerDevice implements Memory, ScheduledDevice {
 
   // The current timer value (mtime) which counts CPU cycles.
   private int mtime;
@@ -19,18 +23,28 @@ public class TimerDevice implements Memory {
   // The comparison value (mtimecmp) used to trigger an interrupt when mtime reaches or exceeds it.
   private int mtimecmp;
 
+  // The CPU cycle count up to which mtime has been advanced.
+  private long lastUpdate;
+
   // Reference to the CPU instance to trigger interrupts when necessary.
   private final R824 cpu;
 
+  // The scheduler that calls the timer back when mtime reaches mtimecmp.
+  private final DeviceScheduler scheduler;
+  private final int schedulerId;
+
   /**
    * Constructs a TimerDevice instance for the R824 CPU.
    * Initializes the timer and comparison register.
    * The comparison register is set to its maximum value by default, meaning no interrupt will occur initially.
    *
-   * @param cpu The CPU instance that this timer interacts with to trigger interrupts.
+   * @param cpu       The CPU instance that this timer interacts with to trigger interrupts.
+   * @param scheduler The scheduler to register the timer's deadline with.
    */
-  public TimerDevice(R824 cpu) {
+  public TimerDevice(R824 cpu, DeviceScheduler scheduler) {
     this.cpu = cpu;
+    this.scheduler = scheduler;
+    this.schedulerId = scheduler.register(this);
     mtime = 0; // Start the timer at 0.
     mtimecmp = 0xFFFFFFFF;  // Initialize mtimecmp to max, disabling interrupts initially.
   }
@@ -68,6 +82,8 @@ public class TimerDevice implements Memory {
    */
   @Override
   public void write(int address, byte value) {
+    advance();
+
     switch (address) {
       case 0x00 -> // Write the low byte of mtimecmp (least significant byte).
           mtimecmp = (mtimecmp & 0xFFFF00) | (value & 0xFF);
@@ -78,29 +94,80 @@ public class TimerDevice implements Memory {
         mtime = 0; // Reset the timer when the comparison value is fully updated.
       }
     }
+
+    // Reschedule, the deadline may have moved closer than the end of the CPU's current run.
+    scheduler.schedule(schedulerId, nextDeadline());
   }
 
   /**
-   * Increments the timer (mtime) by the specified number of CPU cycles.
-   * If the timer exceeds the comparison value (mtimecmp), a timer interrupt is triggered.
-   * The timer is reset to 0 and disabled after triggering an interrupt.
+   * Returns the CPU cycle count at which the timer reaches mtimecmp.
    *
-   * @param cycles The number of CPU cycles to increment the timer by.
+   * @return The cycle of the next timer interrupt, or Long.MAX_VALUE if the timer is disabled.
    */
-  public void incrementTime(int cycles) {
+  public long nextDeadline() {
     if (mtimecmp > 0) {
-      mtime += cycles;
-
-      // Check if the timer has reached or exceeded the comparison value (mtimecmp).
-      // If so, trigger a timer interrupt.
-      if (Integer.compareUnsigned(mtime, mtimecmp) >= 0) {
-        cpu.setInterruptPending(R824.TIMER_INTERRUPT_MASK);  // Trigger the timer interrupt.
-        mtimecmp |= 0x8000_0000; // Disable the timer after interrupt
-        mtime = 0; // Reset the timer after triggering the interrupt.
-      }
+      return lastUpdate + Math.max(0, mtimecmp - mtime);
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Called by the scheduler when mtime is due to reach mtimecmp.
+   * If the timer has reached the comparison value (mtimecmp), a timer interrupt is triggered.
+   * The timer is reset to 0 and disabled after triggering an interrupt.
+   */
+  @Override
+  public void onDeadline() {
+    advance();
+
+    // Check if the timer has reached or exceeded the comparison value (mtimecmp).
+    // If so, trigger a timer interrupt.
+    if (mtimecmp > 0 && Integer.compareUnsigned(mtime, mtimecmp) >= 0) {
+      cpu.setInterruptPending(R824.TIMER_INTERRUPT_MASK);  // Trigger the timer interrupt.
+      mtimecmp |= 0x8000_0000; // Disable the timer after interrupt
+      mtime = 0; // Reset the timer after triggering the interrupt.
+    }
+
+    scheduler.schedule(schedulerId, nextDeadline());
+  }
 
-    } else {
-      // Timer is disabled, no increment is necessary.
+  /**
+   * The registers of a timer, see {@link #saveState()}.
+   */
+  public record State(int mtime, int mtimecmp, long lastUpdate) {
+  }
+
+  /**
+   * Captures the timer registers.
+   *
+   * @return The captured state.
+   */
+  public State saveState() {
+    return new State(mtime, mtimecmp, lastUpdate);
+  }
+
+  /**
+   * Returns the timer to a state captured by {@link #saveState()} and schedules its next
+   * event accordingly. The CPU's cycle count must be restored first.
+   *
+   * @param state The state to restore.
+   */
+  public void restoreState(State state) {
+    mtime = state.mtime();
+    mtimecmp = state.mtimecmp();
+    lastUpdate = state.lastUpdate();
+    scheduler.schedule(schedulerId, nextDeadline());
+  }
+
+  /**
+   * Advances the timer (mtime) by the CPU cycles executed since the last call.
+   * The timer only counts while it is enabled.
+   */
+  private void advance() {
+    long now = cpu.getCycleCount();
+    if (mtimecmp > 0) {
+      mtime += (int) (now - lastUpdate);
     }
+    lastUpdate = now;
   }
 }
@@ -0,0 +1,517 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.Memory;
+import org.robincores.r8.cpu.R824;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * The video output of the system: an indexed-color framebuffer at the start of VRAM,
+ * turned into ARGB pixels for display.
+ * <p>
+ * The framebuffer holds {@link #HEIGHT} lines of {@link #WIDTH} bytes, one palette index
+ * per pixel. The palette of 256 colors lives at {@link #PALETTE_OFFSET} in VRAM, each entry
+ * a 24-bit 0xRRGGBB value in little-endian order, so a guest sets a color with a single
+ * 24-bit store.
+ * <p>
+ * Once a display is attached, the device ends a frame every {@link #getFrameCycles()} CPU
+ * cycles. At that vsync point, on the CPU thread, it copies the lines written since the
+ * previous frame, as recorded by {@link VideoRAM}, into a frame buffer and hands it over
+ * through a lock-free triple buffer. {@link #convertFrame(IntBuffer)} then converts the
+ * latest complete frame on the display's thread. The display never reads VRAM, so it
+ * never sees a frame the guest is still drawing, and neither side ever waits for the
+ * other; frames the display is too slow for are skipped. The screen of the
+ * {@link TextDevice} is handed over at the same points.
+ * <p>
+ * A frame lasts {@link #TOTAL_LINES} lines of equal length: the {@link #HEIGHT} visible
+ * lines, then the vertical blank, which starts with the vsync. The guest sees the beam
+ * through a small register block, and can ask for an external interrupt at each vblank
+ * or when the beam reaches a given line:
+ * <pre>
+ *   0x0  FRAME_COUNTER  24 bits, the number of vblanks so far (read-only)
+ *   0x3  SCANLINE       the line the beam is on (read-only)
+ *   0x4  CONTROL        bit 0: interrupt at vblank, bit 1: interrupt at LINE_COMPARE
+ *   0x5  STATUS         the same bits, set by the events; writing 1 clears a bit
+ *   0x6  LINE_COMPARE   the line for the line event
+ * </pre>
+ * All of it is timed in CPU cycles, so a guest sees the same frames however fast the
+ * host runs it. Events nobody waits for are only counted when the registers are read.
+ */
+public class VideoDevice implements Memory, ScheduledDevice {
+  public static final int WIDTH = 360;
+  public static final int HEIGHT = 240;
+  public static final int PALETTE_OFFSET = 0x0FFC00;
+  public static final int PALETTE_SIZE = 256;
+
+  public static final int FRAME_RATE = 60;
+  public static final long DEFAULT_FRAME_CYCLES = 8_000_000 / FRAME_RATE;  // 60 Hz at 8 MHz
+  public static final int TOTAL_LINES = 256;  // Visible lines and vertical blank
+
+  public static final int REGISTERS_SIZE = 8;
+  public static final int FRAME_COUNTER = 0x0;
+  public static final int SCANLINE = 0x3;
+  public static final int CONTROL = 0x4;
+  public static final int STATUS = 0x5;
+  public static final int LINE_COMPARE = 0x6;
+
+  public static final int EVENT_VBLANK = 0x01;
+  public static final int EVENT_LINE = 0x02;
+
+  private static final int FRAME_SIZE = WIDTH * HEIGHT;
+  private static final int STRIPE_LINES = 16;
+  private static final int STRIPE_COUNT = (HEIGHT + STRIPE_LINES - 1) / STRIPE_LINES;
+
+  private static final int PALETTE_FIRST_BLOCK = PALETTE_OFFSET >>> VideoRAM.BLOCK_SHIFT;
+  private static final int PALETTE_LAST_BLOCK = (PALETTE_OFFSET + 3 * PALETTE_SIZE - 1) >>> VideoRAM.BLOCK_SHIFT;
+
+  private final R824 cpu;
+  private final DeviceScheduler scheduler;
+  private final int schedulerId;
+  private final VideoRAM vram;
+  private final TextDevice text;
+
+  private long frameCycles = DEFAULT_FRAME_CYCLES;
+  private long nextVblank;  // Cycle of the next vsync
+  private long nextLine;  // Cycle at which the beam next reaches lineCompare
+  private long frameNumber;
+
+  // Registers
+  private int control;
+  private int status;
+  private int lineCompare;
+
+  // Owned by the CPU thread
+  private final long[] dirtyBlocks;
+  private final boolean[] writtenLines = new boolean[HEIGHT];
+
+  // Created when a display is attached
+  private volatile Handoff handoff;
+
+  // Owned by the display thread
+  private final int[] palette = new int[PALETTE_SIZE];
+
+  /**
+   * The lines a call to {@link #convertFrame(IntBuffer)} updated.
+   *
+   * @param firstLine The first updated line.
+   * @param lineCount The number of lines from the first one up to the last updated one.
+   */
+  public record Region(int firstLine, int lineCount) {
+  }
+
+  /**
+   * The beam and registers of the device, see {@link #saveState()}.
+   */
+  public record State(long frameNumber, long nextVblank, int control, int status, int lineCompare) {
+  }
+
+  // A copy of the framebuffer and palette at one vsync
+  private static final class Frame {
+    final byte[] pixels = new byte[FRAME_SIZE];
+    final byte[] palette = new byte[3 * PALETTE_SIZE];
+
+    // Lines and palette that differ from the frame the display took before this one
+    final boolean[] changedLines = new boolean[HEIGHT];
+    boolean paletteChanged;
+
+    long number;
+    volatile boolean fresh;  // Published and not yet taken by the display
+  }
+
+  // The triple buffer: the CPU fills its back frame while the display converts its front
+  // frame, and they trade frames through the middle slot
+  private static final class Handoff {
+    Frame back = new Frame();
+    final AtomicReference<Frame> middle = new AtomicReference<>(new Frame());
+    Frame front = new Frame();
+
+    // For each frame, the lines the CPU has to copy before it can publish it again, as a
+    // frame misses the writes of the vsyncs at which another frame was filled
+    final Frame[] frames = {back, middle.get(), front};
+    final boolean[][] staleLines = new boolean[3][HEIGHT];
+    final boolean[] stalePalette = new boolean[3];
+
+    Handoff() {
+      for (int i = 0; i < frames.length; i++) {
+        Arrays.fill(staleLines[i], true);
+        stalePalette[i] = true;
+      }
+    }
+
+    int indexOf(Frame frame) {
+      for (int i = 0; i < frames.length; i++) {
+        if (frames[i] == frame) {
+          return i;
+        }
+      }
+      throw new IllegalStateException("Frame does not belong to the handoff");
+    }
+  }
+
+  /**
+   * @param cpu       The CPU whose cycle count drives the frames.
+   * @param scheduler The scheduler to register the vsync events with.
+   * @param vram      The VRAM, addressed from its start.
+   * @param text      The text display to hand over along with the frames.
+   */
+  public VideoDevice(R824 cpu, DeviceScheduler scheduler, VideoRAM vram, TextDevice text) {
+    this.cpu = cpu;
+    this.scheduler = scheduler;
+    this.schedulerId = scheduler.register(this);
+    this.vram = vram;
+    this.text = text;
+    this.dirtyBlocks = new long[vram.getDirtyWordCount()];
+    resync();
+  }
+
+  /**
+   * Stores the default palette in VRAM: the 16 CGA colors, a 6x6x6 color cube and a
+   * 24-step gray ramp, as on xterm-256 terminals.
+   *
+   * @param vram The VRAM, addressed from its start.
+   */
+  public static void writeDefaultPalette(Memory vram) {
+    int[] cga = {
+        0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xAA5500, 0xAAAAAA,
+        0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+    };
+    int[] levels = {0x00, 0x5F, 0x87, 0xAF, 0xD7, 0xFF};
+
+    byte[] bytes = new byte[3 * PALETTE_SIZE];
+    for (int index = 0; index < PALETTE_SIZE; index++) {
+      int color;
+      if (index < 16) {
+        color = cga[index];
+      } else if (index < 232) {
+        int cube = index - 16;
+        color = levels[cube / 36] << 16 | levels[(cube / 6) % 6] << 8 | levels[cube % 6];
+      } else {
+        int gray = 8 + 10 * (index - 232);
+        color = gray << 16 | gray << 8 | gray;
+      }
+      bytes[3 * index] = (byte) color;
+      bytes[3 * index + 1] = (byte) (color >> 8);
+      bytes[3 * index + 2] = (byte) (color >> 16);
+    }
+    vram.writeBlock(PALETTE_OFFSET, bytes, 0, bytes.length);
+  }
+
+  /**
+   * Starts producing frames for a display. Headless systems never call this, so they
+   * neither hold frame buffers nor get woken up for frames unless the guest enables
+   * the vblank interrupt. Must be called before the system runs, or from the thread
+   * that runs it.
+   */
+  public void attachDisplay() {
+    if (handoff == null) {
+      handoff = new Handoff();
+      text.attachDisplay();
+      vram.markAllDirty();
+      schedule();
+    }
+  }
+
+  /**
+   * Sets the length of a frame, e.g. to keep 60 frames per second at a new clock
+   * frequency. Must not be called while the system is running.
+   *
+   * @param frameCycles The number of CPU cycles per frame.
+   */
+  public void setFrameCycles(long frameCycles) {
+    if (frameCycles <= 0) {
+      throw new IllegalArgumentException("Frame length must be positive: " + frameCycles);
+    }
+    this.frameCycles = frameCycles;
+    resync();
+  }
+
+  public long getFrameCycles() {
+    return frameCycles;
+  }
+
+  /**
+   * @return The number of frames ended so far. Must be called from the thread that runs
+   * the system, or while it is not running.
+   */
+  public long getFrameNumber() {
+    advance();
+    return frameNumber;
+  }
+
+  /**
+   * Reads a register. Registers beyond LINE_COMPARE read as 0.
+   *
+   * @param address The offset in the register block.
+   * @return The byte read.
+   */
+  @Override
+  public byte read(int address) {
+    advance();
+    return switch (address) {
+      case FRAME_COUNTER, FRAME_COUNTER + 1, FRAME_COUNTER + 2 ->
+          (byte) (frameNumber >>> (8 * (address - FRAME_COUNTER)));
+      case SCANLINE -> (byte) scanline();
+      case CONTROL -> (byte) control;
+      case STATUS -> (byte) status;
+      case LINE_COMPARE -> (byte) lineCompare;
+      default -> 0;
+    };
+  }
+
+  /**
+   * Writes a register. Writes to read-only registers are ignored.
+   *
+   * @param address The offset in the register block.
+   * @param value   The byte to write.
+   */
+  @Override
+  public void write(int address, byte value) {
+    advance();
+    switch (address) {
+      case CONTROL -> control = value & (EVENT_VBLANK | EVENT_LINE);
+      case STATUS -> status &= ~value;  // Acknowledge events
+      case LINE_COMPARE -> {
+        lineCompare = value & 0xFF;
+        nextLine = lineCycle(lineCompare);
+      }
+    }
+    schedule();
+  }
+
+  /**
+   * Captures the beam position and registers.
+   *
+   * @return The captured state.
+   */
+  public State saveState() {
+    advance();
+    return new State(frameNumber, nextVblank, control, status, lineCompare);
+  }
+
+  /**
+   * Returns the device to a state captured by {@link #saveState()}. The CPU's cycle count
+   * must be restored first.
+   *
+   * @param state The state to restore.
+   */
+  public void restoreState(State state) {
+    frameNumber = state.frameNumber();
+    nextVblank = state.nextVblank();
+    control = state.control();
+    status = state.status();
+    lineCompare = state.lineCompare();
+    nextLine = lineCycle(lineCompare);
+    schedule();
+  }
+
+  // Starts a new frame at the current cycle, e.g. after the cycle count was restored
+  // without the beam
+  void resync() {
+    nextVblank = cpu.getCycleCount() + lineOffset(HEIGHT);
+    nextLine = lineCycle(lineCompare);
+    schedule();
+  }
+
+  /**
+   * Called by the scheduler at the next event the device waits for, on the CPU thread.
+   */
+  @Override
+  public void onDeadline() {
+    advance();
+    schedule();
+  }
+
+  // Handles the vblanks and line events up to the current cycle. After a long time
+  // without anybody waiting for them, several frames pass as one.
+  private void advance() {
+    long now = cpu.getCycleCount();
+    int events = 0;
+    if (now >= nextVblank) {
+      long frames = (now - nextVblank) / frameCycles + 1;
+      frameNumber += frames;
+      nextVblank += frames * frameCycles;
+      events |= EVENT_VBLANK;
+    }
+    if (now >= nextLine) {
+      nextLine += ((now - nextLine) / frameCycles + 1) * frameCycles;
+      events |= EVENT_LINE;
+    }
+    if (events == 0) {
+      return;
+    }
+
+    status |= events;
+    if ((events & control) != 0) {
+      cpu.setInterruptPending(R824.EXTERNAL_INTERRUPT_MASK);
+    }
+    if ((events & EVENT_VBLANK) != 0 && handoff != null) {
+      publishFrame();
+      text.publishScreen();
+    }
+  }
+
+  // Keeps the earliest event somebody waits for scheduled: the vsync while a display is
+  // attached, and the events whose interrupts are enabled
+  private void schedule() {
+    long deadline = Long.MAX_VALUE;
+    if (handoff != null || (control & EVENT_VBLANK) != 0) {
+      deadline = nextVblank;
+    }
+    if ((control & EVENT_LINE) != 0) {
+      deadline = Math.min(deadline, nextLine);
+    }
+    scheduler.schedule(schedulerId, deadline);
+  }
+
+  // Cycles from the start of a frame to the start of a line
+  private long lineOffset(int line) {
+    return frameCycles * line / TOTAL_LINES;
+  }
+
+  // The next cycle after the current one at which the beam starts the given line
+  private long lineCycle(int line) {
+    long now = cpu.getCycleCount();
+    long cycle = nextVblank - lineOffset(HEIGHT) + lineOffset(line) - frameCycles;
+    while (cycle <= now) {
+      cycle += frameCycles;
+    }
+    return cycle;
+  }
+
+  // The line the beam is on; the vertical blank runs up to the start of the next frame
+  private int scanline() {
+    long sinceStart = cpu.getCycleCount() - (nextVblank - lineOffset(HEIGHT));
+    if (sinceStart < 0) {
+      sinceStart += frameCycles;  // Still in the previous frame's vertical blank
+    }
+    return (int) Math.min(TOTAL_LINES - 1, sinceStart * TOTAL_LINES / frameCycles);
+  }
+
+  // Copies what changed into the back frame and swaps it into the middle slot
+  private void publishFrame() {
+    Handoff handoff = this.handoff;
+
+    // Collect the lines and palette written during this frame
+    vram.takeDirtyBlocks(dirtyBlocks);
+    boolean paletteWritten = isDirty(PALETTE_FIRST_BLOCK, PALETTE_LAST_BLOCK);
+    for (int line = 0; line < HEIGHT; line++) {
+      int start = line * WIDTH;
+      writtenLines[line] = isDirty(start >>> VideoRAM.BLOCK_SHIFT, (start + WIDTH - 1) >>> VideoRAM.BLOCK_SHIFT);
+    }
+    for (int i = 0; i < handoff.frames.length; i++) {
+      for (int line = 0; line < HEIGHT; line++) {
+        handoff.staleLines[i][line] |= writtenLines[line];
+      }
+      handoff.stalePalette[i] |= paletteWritten;
+    }
+
+    // Bring the back frame up to date with VRAM
+    Frame back = handoff.back;
+    int index = handoff.indexOf(back);
+    boolean[] stale = handoff.staleLines[index];
+    for (int line = 0; line < HEIGHT; line++) {
+      if (stale[line]) {
+        vram.readBlock(line * WIDTH, back.pixels, line * WIDTH, WIDTH);
+        stale[line] = false;
+      }
+    }
+    if (handoff.stalePalette[index]) {
+      vram.readBlock(PALETTE_OFFSET, back.palette, 0, back.palette.length);
+      handoff.stalePalette[index] = false;
+    }
+
+    // A frame still waiting in the middle slot will be skipped, so this one also has to
+    // carry its changes. If the display takes it in the meantime, some lines are merely
+    // converted twice.
+    System.arraycopy(writtenLines, 0, back.changedLines, 0, HEIGHT);
+    back.paletteChanged = paletteWritten;
+    Frame waiting = handoff.middle.get();
+    if (waiting.fresh) {
+      for (int line = 0; line < HEIGHT; line++) {
+        back.changedLines[line] |= waiting.changedLines[line];
+      }
+      back.paletteChanged |= waiting.paletteChanged;
+    }
+
+    back.number = frameNumber;
+    back.fresh = true;
+    handoff.back = handoff.middle.getAndSet(back);
+  }
+
+  private boolean isDirty(int firstBlock, int lastBlock) {
+    for (int block = firstBlock; block <= lastBlock; block++) {
+      if ((dirtyBlocks[block >>> 6] & (1L << block)) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Takes the latest complete frame and converts it to opaque ARGB pixels, writing only
+   * the lines that changed since the frame taken before it, or all of them if the
+   * palette did. Meant to be called once per display refresh, always from the same
+   * thread, after {@link #attachDisplay()}.
+   *
+   * @param pixels The target of {@link #WIDTH} x {@link #HEIGHT} pixels, line by line.
+   * @return The updated lines, or null if no new frame was ready or nothing changed.
+   */
+  public Region convertFrame(IntBuffer pixels) {
+    Handoff handoff = this.handoff;
+    if (handoff == null) {
+      throw new IllegalStateException("No display attached");
+    }
+    if (!handoff.middle.get().fresh) {
+      return null;
+    }
+    Frame frame = handoff.middle.getAndSet(handoff.front);
+    frame.fresh = false;
+    handoff.front = frame;
+
+    if (frame.paletteChanged) {
+      for (int index = 0; index < PALETTE_SIZE; index++) {
+        palette[index] = 0xFF00_0000
+            | (frame.palette[3 * index + 2] & 0xFF) << 16
+            | (frame.palette[3 * index + 1] & 0xFF) << 8
+            | (frame.palette[3 * index] & 0xFF);
+      }
+    }
+
+    // Each stripe reports the range of lines it converted as first << 16 | end
+    long updated = IntStream.range(0, STRIPE_COUNT).parallel()
+        .mapToLong(stripe -> convertStripe(frame, pixels, stripe))
+        .reduce(HEIGHT << 16, (a, b) -> Math.min(a >>> 16, b >>> 16) << 16 | Math.max(a & 0xFFFF, b & 0xFFFF));
+
+    int first = (int) (updated >>> 16);
+    int end = (int) (updated & 0xFFFF);
+    return (first < end) ? new Region(first, end - first) : null;
+  }
+
+  /**
+   * @return The number of the frame last taken by {@link #convertFrame(IntBuffer)}, or 0.
+   * Must be called from the display's thread.
+   */
+  public long getDisplayedFrameNumber() {
+    Handoff handoff = this.handoff;
+    return (handoff != null) ? handoff.front.number : 0;
+  }
+
+  private long convertStripe(Frame frame, IntBuffer pixels, int stripe) {
+    int first = HEIGHT;
+    int end = 0;
+    for (int line = stripe * STRIPE_LINES; line < Math.min(HEIGHT, (stripe + 1) * STRIPE_LINES); line++) {
+      if (!frame.paletteChanged && !frame.changedLines[line]) {
+        continue;
+      }
+      for (int i = line * WIDTH; i < (line + 1) * WIDTH; i++) {
+        pixels.put(i, palette[frame.pixels[i] & 0xFF]);
+      }
+      first = Math.min(first, line);
+      end = line + 1;
+    }
+    return (long) first << 16 | end;
+  }
+}
@@ -0,0 +1,110 @@
+package org.robincores.r8.system;
+
+import org.robincores.r8.cpu.DirectMemory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * VRAM that records which 256-byte blocks have been written, so the display only has to
+ * look at what changed.
+ * <p>
+ * Every write sets the bit of its block in a bitset with a shift and an OR. The CPU reads
+ * and writes VRAM pages directly like any sparse RAM, and sets the bits itself, see
+ * {@link DirectMemory#dirtyBitsets()}; other writes set them in write(). The display
+ * takes the bits with {@link #takeDirtyBlocks(long[])}, which clears them atomically
+ * word by word. A write that races with it may leave its bit set for one more frame,
+ * but is never lost.
+ */
+public class VideoRAM extends SparseRAM {
+  public static final int BLOCK_SHIFT = DirectMemory.DIRTY_BLOCK_SHIFT;
+  public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+  private static final int WORD_SHIFT = BLOCK_SHIFT + 6;  // 64 blocks per bitset word
+  private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final long[] dirty;
+
+  /**
+   * @param size The size of the region in bytes.
+   */
+  public VideoRAM(int size) {
+    super(size);
+    dirty = new long[(size + (1 << WORD_SHIFT) - 1) >>> WORD_SHIFT];
+  }
+
+  /**
+   * @return The number of bitset words, i.e. the length {@link #takeDirtyBlocks} needs.
+   */
+  public int getDirtyWordCount() {
+    return dirty.length;
+  }
+
+  /**
+   * Moves the dirty bits into the given bitset and clears them. Bit {@code b % 64} of
+   * word {@code b / 64} stands for the block at offset {@code b * BLOCK_SIZE}.
+   *
+   * @param blocks The bitset to fill, at least {@link #getDirtyWordCount()} words long.
+   * @return True if any block was dirty.
+   */
+  public boolean takeDirtyBlocks(long[] blocks) {
+    long any = 0;
+    for (int i = 0; i < dirty.length; i++) {
+      long word = ((long) WORDS.getVolatile(dirty, i) != 0) ? (long) WORDS.getAndSet(dirty, i, 0L) : 0;
+      blocks[i] = word;
+      any |= word;
+    }
+    return any != 0;
+  }
+
+  /**
+   * Marks the whole region dirty, e.g. after its contents were replaced without write().
+   */
+  public void markAllDirty() {
+    for (int i = 0; i < dirty.length; i++) {
+      WORDS.setVolatile(dirty, i, -1L);
+    }
+  }
+
+  /**
+   * Marks a range dirty.
+   *
+   * @param address The first offset in the region.
+   * @param length  The number of bytes.
+   */
+  public void markDirty(int address, int length) {
+    for (int block = address >>> BLOCK_SHIFT; block <= (address + length - 1) >>> BLOCK_SHIFT; block++) {
+      dirty[block >>> 6] |= 1L << block;
+    }
+  }
+
+  // The bitset, for the CPU to set the bits of its direct writes through MemoryMap
+  long[] dirtyBitset() {
+    return dirty;
+  }
+
+  @Override
+  public void write(int address, byte value) {
+    super.write(address, value);
+    dirty[address >>> WORD_SHIFT] |= 1L << (address >>> BLOCK_SHIFT);
+  }
+
+  @Override
+  public void write24(int address, int value) {
+    super.write24(address, value);
+    int first = address >>> BLOCK_SHIFT;
+    int last = (address + 2) >>> BLOCK_SHIFT;
+    dirty[first >>> 6] |= 1L << first;
+    if (last != first) {
+      dirty[last >>> 6] |= 1L << last;
+    }
+  }
+
+  @Override
+  public void writeBlock(int address, byte[] buffer, int offset, int length) {
+    super.writeBlock(address, buffer, offset, length);
+    if (length > 0) {
+      markDirty(address, length);
+    }
+  }
+}
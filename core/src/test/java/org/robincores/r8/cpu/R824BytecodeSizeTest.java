@@ -0,0 +1,105 @@
+package org.robincores.r8.cpu;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keeps the instruction dispatch of R824 small enough for HotSpot to compile and inline.
+ * <p>
+ * Methods over HugeMethodLimit (8000 bytes of bytecode) are never compiled, and methods
+ * over FreqInlineSize (325 bytes) are not inlined into their hot callers. The sizes are
+ * read from the Code attributes of R824.class.
+ */
+class R824BytecodeSizeTest {
+  private static final int HUGE_METHOD_LIMIT = 8000;
+  private static final int FREQ_INLINE_SIZE = 325;
+
+  @Test
+  void dispatchStaysInlinable() throws IOException {
+    Integer size = codeSizes().get("decodeAndExecute");
+    assertNotNull(size, "decodeAndExecute not found in R824.class");
+    assertTrue(size <= FREQ_INLINE_SIZE,
+        "decodeAndExecute has " + size + " bytes of bytecode, more than FreqInlineSize (" + FREQ_INLINE_SIZE + ")");
+  }
+
+  @Test
+  void noMethodIsTooLargeToCompile() throws IOException {
+    codeSizes().forEach((method, size) -> assertTrue(size <= HUGE_METHOD_LIMIT,
+        method + " has " + size + " bytes of bytecode, more than HugeMethodLimit (" + HUGE_METHOD_LIMIT + ")"));
+  }
+
+  // The largest code length of each method name in R824.class
+  private static Map<String, Integer> codeSizes() throws IOException {
+    try (InputStream stream = R824.class.getResourceAsStream("R824.class")) {
+      assertNotNull(stream, "R824.class not found");
+      DataInputStream in = new DataInputStream(stream);
+      in.readInt();  // Magic
+      in.readUnsignedShort();  // Minor version
+      in.readUnsignedShort();  // Major version
+
+      // Keep the UTF-8 entries of the constant pool, skip everything else
+      int poolCount = in.readUnsignedShort();
+      String[] utf8 = new String[poolCount];
+      for (int i = 1; i < poolCount; i++) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case 1 -> utf8[i] = in.readUTF();
+          case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+          case 5, 6 -> {
+            in.skipBytes(8);
+            i++;  // Longs and doubles take two entries
+          }
+          case 7, 8, 16, 19, 20 -> in.skipBytes(2);
+          case 15 -> in.skipBytes(3);
+          default -> throw new IOException("Unknown constant pool tag " + tag);
+        }
+      }
+
+      in.skipBytes(6);  // Access flags, this class, super class
+      in.skipBytes(2 * in.readUnsignedShort());  // Interfaces
+      int fieldCount = in.readUnsignedShort();
+      for (int i = 0; i < fieldCount; i++) {
+        in.skipBytes(6);
+        skipAttributes(in);
+      }
+
+      Map<String, Integer> sizes = new HashMap<>();
+      int methodCount = in.readUnsignedShort();
+      for (int i = 0; i < methodCount; i++) {
+        in.skipBytes(2);  // Access flags
+        String name = utf8[in.readUnsignedShort()];
+        in.skipBytes(2);  // Descriptor
+        int attributeCount = in.readUnsignedShort();
+        for (int j = 0; j < attributeCount; j++) {
+          String attribute = utf8[in.readUnsignedShort()];
+          int length = in.readInt();
+          if (attribute.equals("Code")) {
+            in.skipBytes(4);  // Max stack, max locals
+            int codeLength = in.readInt();
+            sizes.merge(name, codeLength, Math::max);
+            in.skipBytes(length - 8);
+          } else {
+            in.skipBytes(length);
+          }
+        }
+      }
+      return sizes;
+    }
+  }
+
+  private static void skipAttributes(DataInputStream in) throws IOException {
+    int count = in.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      in.skipBytes(2);
+      in.skipBytes(in.readInt());
+    }
+  }
+}
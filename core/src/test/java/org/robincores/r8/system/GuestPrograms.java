@@ -0,0 +1,74 @@
+package org.robincores.r8.system;
+
+/**
+ * Guest programs shared by the system tests, assembled from the sources in tests/asm.
+ */
+final class GuestPrograms {
+  // tests/asm/store_loop.asm, to be loaded at 0. Counts down from 1000 in a local, adding
+  // and storing to 0x2000 on every pass, then stores the running total to 0x3000 and
+  // starts over, forever.
+  //
+  //   000000  62 02           j start
+  //   000002  fb              mtvec: iret
+  //   000003  00              nop
+  //   000004  8b 00 00 10     start: i 0x100000
+  //   000008  7f              stl sp
+  //   000009  8b 00 00 00     i 0
+  //   00000D  47              stl @1
+  //   00000E  8b e8 03 00     outer: i 1000
+  //   000012  43              stl @0
+  //   000013  03              loop: ldl @0
+  //   000014  f0              push
+  //   000015  07              ldl @1
+  //   000016  0a 03           b 3
+  //   000018  10              add
+  //   000019  47              stl @1
+  //   00001A  b0              pop
+  //   00001B  4b              stl @2
+  //   00001C  8b 00 20 00     i 0x2000
+  //   000020  07              ldl @1
+  //   000021  f8              st
+  //   000022  78              pop1
+  //   000023  03              ldl @0
+  //   000024  44              dec
+  //   000025  43              stl @0
+  //   000026  03              ldl @0
+  //   000027  83              i0
+  //   000028  46 e9           bne loop
+  //   00002A  07              ldl @1
+  //   00002B  8b 00 30 00     i 0x3000
+  //   00002F  0c              swap
+  //   000030  f8              st
+  //   000031  78              pop1
+  //   000032  62 da           j outer
+  private static final byte[] STORE_LOOP = {
+      (byte) 0x62, (byte) 0x02, (byte) 0xfb, (byte) 0x00, (byte) 0x8b, (byte) 0x00, (byte) 0x00, (byte) 0x10,
+      (byte) 0x7f, (byte) 0x8b, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x47, (byte) 0x8b, (byte) 0xe8,
+      (byte) 0x03, (byte) 0x00, (byte) 0x43, (byte) 0x03, (byte) 0xf0, (byte) 0x07, (byte) 0x0a, (byte) 0x03,
+      (byte) 0x10, (byte) 0x47, (byte) 0xb0, (byte) 0x4b, (byte) 0x8b, (byte) 0x00, (byte) 0x20, (byte) 0x00,
+      (byte) 0x07, (byte) 0xf8, (byte) 0x78, (byte) 0x03, (byte) 0x44, (byte) 0x43, (byte) 0x03, (byte) 0x83,
+      (byte) 0x46, (byte) 0xe9, (byte) 0x07, (byte) 0x8b, (byte) 0x00, (byte) 0x30, (byte) 0x00, (byte) 0x0c,
+      (byte) 0xf8, (byte) 0x78, (byte) 0x62, (byte) 0xda
+  };
+
+  // Offsets of the 24-bit little-endian immediates of the two "i" before the stores
+  private static final int FIRST_STORE_ADDRESS = 0x1D;
+  private static final int SECOND_STORE_ADDRESS = 0x2C;
+
+  private GuestPrograms() {
+  }
+
+  // The store loop with its stores moved to storeBase + 0x2000 and storeBase + 0x3000
+  static byte[] storeLoop(int storeBase) {
+    byte[] program = STORE_LOOP.clone();
+    patch24(program, FIRST_STORE_ADDRESS, storeBase + 0x2000);
+    patch24(program, SECOND_STORE_ADDRESS, storeBase + 0x3000);
+    return program;
+  }
+
+  private static void patch24(byte[] program, int offset, int value) {
+    program[offset] = (byte) value;
+    program[offset + 1] = (byte) (value >>> 8);
+    program[offset + 2] = (byte) (value >>> 16);
+  }
+}
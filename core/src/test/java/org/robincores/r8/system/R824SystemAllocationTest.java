@@ -0,0 +1,58 @@
+package org.robincores.r8.system;
+
+import org.junit.jupiter.api.Test;
+import org.robincores.r8.cpu.ExecutionMode;
+import org.robincores.r8.cpu.R824;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the instruction loop does not allocate once it is warm, in every execution
+ * mode. The allocations of the running thread are read from the JVM, so the garbage a
+ * slice of guest code leaves behind is measured directly rather than inferred from GC
+ * activity.
+ */
+class R824SystemAllocationTest {
+  private static final long WARMUP_CYCLES = 50_000_000;
+  private static final long MEASURED_CYCLES = 50_000_000;
+  private static final long SLICE_CYCLES = 100_000;  // Returns to the system run loop this often
+  private static final double MAX_BYTES_PER_INSTRUCTION = 0.001;
+
+  @Test
+  void instructionLoopDoesNotAllocate() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported(), "Thread allocation counters are not supported");
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    byte[] loop = GuestPrograms.storeLoop(0);
+    for (ExecutionMode mode : ExecutionMode.values()) {
+      R824System system = new R824System();
+      system.getMemoryMap().writeBlock(0, loop, 0, loop.length);
+      system.getCpu().invalidateDecodeCache();
+      system.setExecutionMode(mode);
+      R824 cpu = system.getCpu();
+
+      run(system, WARMUP_CYCLES);
+
+      long startInstructions = cpu.getInstructionCount();
+      long startBytes = threads.getCurrentThreadAllocatedBytes();
+      run(system, MEASURED_CYCLES);
+      long bytes = threads.getCurrentThreadAllocatedBytes() - startBytes;
+      long instructions = cpu.getInstructionCount() - startInstructions;
+
+      double bytesPerInstruction = (double) bytes / instructions;
+      assertTrue(bytesPerInstruction < MAX_BYTES_PER_INSTRUCTION,
+          mode + " allocated " + bytes + " bytes in " + instructions + " instructions");
+    }
+  }
+
+  // Runs in short slices, so the run loop is exercised as much as the CPU
+  private static void run(R824System system, long cycles) {
+    long end = system.getCpu().getCycleCount() + cycles;
+    while (system.getCpu().getCycleCount() < end) {
+      system.runUntil(Math.min(end, system.getCpu().getCycleCount() + SLICE_CYCLES));
+    }
+  }
+}
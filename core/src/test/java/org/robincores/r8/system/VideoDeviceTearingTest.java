@@ -0,0 +1,92 @@
+package org.robincores.r8.system;
+
+import org.junit.jupiter.api.Test;
+import org.robincores.r8.cpu.R824;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stresses the frame handoff between the CPU thread and the display's thread.
+ * <p>
+ * Before every frame, the CPU thread fills each line of the framebuffer with the number
+ * of that frame, so every frame the device publishes is a single color. Meanwhile the
+ * test thread converts frames as fast as it can, and a frame that mixes lines of
+ * different frames, or shows a different frame than it claims, was torn by the handoff.
+ */
+class VideoDeviceTearingTest {
+  private static final int FRAMES = 20_000;
+  private static final long FRAME_CYCLES = 2_000;
+  private static final int VRAM_BASE = 0xE00000;
+
+  // J -2: the guest spins in place while the host draws
+  private static final byte[] SPIN = {(byte) 0x62, (byte) 0xFE};
+
+  @Test
+  void convertedFramesAreNeverTorn() throws InterruptedException {
+    R824System system = new R824System();
+    R824 cpu = system.getCpu();
+    VideoDevice video = system.getVideo();
+    MemoryMap memoryMap = system.getMemoryMap();
+    memoryMap.writeBlock(0, SPIN, 0, SPIN.length);
+    cpu.invalidateDecodeCache();
+
+    // A gray ramp gives each frame number modulo 256 its own color
+    byte[] palette = new byte[3 * VideoDevice.PALETTE_SIZE];
+    for (int i = 0; i < palette.length; i++) {
+      palette[i] = (byte) (i / 3);
+    }
+    memoryMap.writeBlock(VRAM_BASE + VideoDevice.PALETTE_OFFSET, palette, 0, palette.length);
+    video.setFrameCycles(FRAME_CYCLES);
+    video.attachDisplay();
+
+    AtomicReference<Throwable> cpuFailure = new AtomicReference<>();
+    Thread cpuThread = new Thread(() -> {
+      try {
+        byte[] line = new byte[VideoDevice.WIDTH];
+        for (int i = 0; i < FRAMES; i++) {
+          long frame = video.getFrameNumber() + 1;
+          Arrays.fill(line, (byte) frame);
+          for (int y = 0; y < VideoDevice.HEIGHT; y++) {
+            memoryMap.writeBlock(VRAM_BASE + y * VideoDevice.WIDTH, line, 0, line.length);
+          }
+          while (video.getFrameNumber() < frame) {
+            system.runUntil(cpu.getCycleCount() + FRAME_CYCLES);
+          }
+        }
+      } catch (Throwable e) {
+        cpuFailure.set(e);
+      }
+    }, "cpu");
+    cpuThread.start();
+
+    IntBuffer pixels = IntBuffer.allocate(VideoDevice.WIDTH * VideoDevice.HEIGHT);
+    int converted = 0;
+    boolean finished = false;
+    while (!finished) {
+      finished = !cpuThread.isAlive();  // Takes the last frame after the CPU thread ended
+      if (video.convertFrame(pixels) == null) {
+        continue;
+      }
+      converted++;
+
+      long frame = video.getDisplayedFrameNumber();
+      int expected = 0xFF00_0000 | (int) (frame & 0xFF) * 0x01_01_01;
+      for (int i = 0; i < pixels.capacity(); i++) {
+        if (pixels.get(i) != expected) {
+          assertEquals(expected, pixels.get(i), "Frame " + frame + " is torn at line " + i / VideoDevice.WIDTH);
+        }
+      }
+    }
+    cpuThread.join();
+
+    assertNull(cpuFailure.get());
+    assertEquals(video.getFrameNumber(), video.getDisplayedFrameNumber(), "The last frame was not displayed");
+    assertTrue(converted > 1, "Only " + converted + " frames converted");
+  }
+}
@@ -0,0 +1,67 @@
+package org.robincores.r8.system;
+
+import org.junit.jupiter.api.Test;
+import org.robincores.r8.cpu.ExecutionMode;
+import org.robincores.r8.cpu.R824;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that VideoRAM records the blocks that are written, through its own methods and
+ * through the direct stores of the CPU.
+ */
+class VideoRAMTest {
+  private static final int VRAM_BASE = 0xE00000;
+
+  @Test
+  void write24MarksEachBlockItTouches() {
+    VideoRAM vram = new VideoRAM(R824System.VRAM_SIZE);
+    long[] blocks = new long[vram.getDirtyWordCount()];
+
+    vram.write24(0x100, 0x123456);
+    vram.takeDirtyBlocks(blocks);
+    assertArrayEquals(bitset(vram, 1), blocks);
+
+    vram.write24(0x1FF, 0x123456);
+    vram.takeDirtyBlocks(blocks);
+    assertArrayEquals(bitset(vram, 1, 2), blocks);
+
+    vram.write24(0x3FFE, 0x123456);  // Across a bitset word
+    vram.takeDirtyBlocks(blocks);
+    assertArrayEquals(bitset(vram, 0x3F, 0x40), blocks);
+  }
+
+  @Test
+  void directStoresOfTheCpuAreRecorded() {
+    // Stores to VRAM offsets 0x2000 and 0x3000
+    byte[] loop = GuestPrograms.storeLoop(VRAM_BASE);
+    for (ExecutionMode mode : ExecutionMode.values()) {
+      MemoryMap memoryMap = new MemoryMap();
+      VideoRAM vram = new VideoRAM(R824System.VRAM_SIZE);
+      memoryMap.mapRegion(0, R824System.SYSTEM_RAM_SIZE, new SparseRAM(R824System.SYSTEM_RAM_SIZE));
+      memoryMap.mapRegion(VRAM_BASE, R824System.VRAM_SIZE, vram);
+      memoryMap.writeBlock(0, loop, 0, loop.length);
+      R824 cpu = new R824(memoryMap);
+      cpu.setExecutionMode(mode);
+      long[] blocks = new long[vram.getDirtyWordCount()];
+
+      // The first store to each page allocates it through write(); later ones are direct
+      cpu.runUntil(1_000_000);
+      vram.takeDirtyBlocks(blocks);
+      assertFalse(vram.takeDirtyBlocks(blocks), mode + " left blocks dirty");
+
+      cpu.runUntil(2_000_000);
+      vram.takeDirtyBlocks(blocks);
+      assertArrayEquals(bitset(vram, 0x20, 0x30), blocks, mode.name());
+    }
+  }
+
+  private static long[] bitset(VideoRAM vram, int... blocks) {
+    long[] bitset = new long[vram.getDirtyWordCount()];
+    for (int block : blocks) {
+      bitset[block >>> 6] |= 1L << block;
+    }
+    return bitset;
+  }
+}
@@ -1,9 +1,9 @@
 module org.bytecraft.skyline {
   requires javafx.controls;
   requires javafx.fxml;
-  requires com.google.gson;
+  requires org.bytecraft.skyline.core;
 
 
   opens org.robincores.r8 to javafx.fxml;
   exports org.robincores.r8;
-}
\ No newline at end of file
+}
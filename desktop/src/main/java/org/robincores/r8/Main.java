@@ -1,11 +1,12 @@
 package org.robincores.r8;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
-import javafx.scene.canvas.Canvas;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import org.robincores.r8.system.R824System;
+import org.robincores.r8.system.VideoDevice;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -17,25 +18,33 @@ public class Main extends Application {
   @Override
   public void start(Stage primaryStage) {
     try {
-      // Create Canvas for graphics
-      Canvas canvas = new Canvas(720, 480);
-
       // Initialize the system configuration (CPU, memory, etc.)
-      R824System skylineSystem = new R824System(canvas);
+      R824System skylineSystem = new R824System();
+
+      // Show the VRAM framebuffer, scaled up to 720x480
+      VideoView videoView = new VideoView(skylineSystem.getVideo(), 2);
+
+      // Show the text display over it while the program enables it
+      TextView textView = new TextView(skylineSystem.getText(), skylineSystem.getVideo(),
+          2 * VideoDevice.WIDTH, 2 * VideoDevice.HEIGHT);
 
       // Load the binary program into RAM at address 0x0000
       skylineSystem.loadProgram("system.bin", 0x0000);
 
       // Main JavaFX layout
-      StackPane root = new StackPane(canvas);
-      Scene scene = new Scene(root, canvas.getWidth(), canvas.getHeight());
+      StackPane root = new StackPane(videoView.getNode(), textView.getNode());
+      Scene scene = new Scene(root, 2 * VideoDevice.WIDTH, 2 * VideoDevice.HEIGHT);
 
       primaryStage.setTitle("R824 System");
       primaryStage.setScene(scene);
       primaryStage.show();
+      videoView.start();
+      textView.start();
 
       // Handle application close event to stop the system and executor service
       primaryStage.setOnCloseRequest(event -> {
+        videoView.stop();
+        textView.stop();
         skylineSystem.stop();  // Stop the emulator
         executorService.shutdownNow();  // Shutdown the ExecutorService
       });
@@ -43,7 +52,15 @@ public class Main extends Application {
       // ---
       // Create an ExecutorService to handle the CPU execution on a separate thread
       executorService = Executors.newSingleThreadExecutor();
-      executorService.submit(skylineSystem::run);  // Run the emulator in a separate thread
+      executorService.submit(() -> {
+        skylineSystem.run();  // Run the emulator in a separate thread
+
+        // Close the window when the program ends itself with EXIT
+        if (skylineSystem.getCpu().hasExited()) {
+          Platform.exit();
+          executorService.shutdown();
+        }
+      });
 
     } catch (IOException e) {
       e.printStackTrace();  // Handle exception if the program file cannot be loaded
@@ -0,0 +1,177 @@
+package org.robincores.r8;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import org.robincores.r8.system.TextDevice;
+import org.robincores.r8.system.VideoDevice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Shows the screen of a {@link TextDevice} on top of the video output, while the guest
+ * has it enabled.
+ * <p>
+ * The 256 characters are rendered once into a glyph atlas of coverage values. A cell is
+ * drawn from a cache of colored glyphs, one per character and attribute, built from the
+ * atlas the first time the pair is shown, so repainting a cell is a copy of its pixel
+ * rows. Only the cells that changed are repainted, and only their rows are handed to
+ * JavaFX as dirty.
+ */
+public class TextView {
+  public static final int CELL_WIDTH = 9;
+  public static final int CELL_HEIGHT = 16;
+
+  private static final int WIDTH = TextDevice.COLUMNS * CELL_WIDTH;
+  private static final int HEIGHT = TextDevice.ROWS * CELL_HEIGHT;
+  private static final int CELL_PIXELS = CELL_WIDTH * CELL_HEIGHT;
+  private static final int CURSOR_LINES = 2;
+
+  private final TextDevice text;
+  private final IntBuffer pixels;
+  private final PixelBuffer<IntBuffer> pixelBuffer;
+  private final ImageView imageView;
+  private final AnimationTimer timer;
+
+  private final byte[][] atlas = new byte[256][];  // Coverage of each character, 0 to 255 per pixel
+  private final int[][] glyphs = new int[256 * 256][];  // Colored glyphs by character and attribute
+
+  /**
+   * @param text   The text device to show, of a system that is not running yet.
+   * @param video  The video device whose frames hand over the screens.
+   * @param width  The width of the view on screen.
+   * @param height The height of the view on screen.
+   */
+  public TextView(TextDevice text, VideoDevice video, double width, double height) {
+    this.text = text;
+    video.attachDisplay();
+    renderAtlas();
+
+    pixels = ByteBuffer.allocateDirect(4 * WIDTH * HEIGHT).order(ByteOrder.nativeOrder()).asIntBuffer();
+    pixelBuffer = new PixelBuffer<>(WIDTH, HEIGHT, pixels, PixelFormat.getIntArgbPreInstance());
+
+    imageView = new ImageView(new WritableImage(pixelBuffer));
+    imageView.setFitWidth(width);
+    imageView.setFitHeight(height);
+    imageView.setVisible(false);
+
+    timer = new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        pixelBuffer.updateBuffer(buffer -> {
+          TextDevice.Rows rows = text.paintScreen(TextView.this::paintCell);
+          return (rows != null) ? new Rectangle2D(0, rows.firstRow() * CELL_HEIGHT, WIDTH, rows.rowCount() * CELL_HEIGHT)
+              : Rectangle2D.EMPTY;
+        });
+        imageView.setVisible(text.isDisplayEnabled());
+      }
+    };
+  }
+
+  public ImageView getNode() {
+    return imageView;
+  }
+
+  public void start() {
+    timer.start();
+  }
+
+  public void stop() {
+    timer.stop();
+  }
+
+  // Renders code page 437 in white on black, one character per cell, and keeps the coverage
+  private void renderAtlas() {
+    Charset charset = Charset.isSupported("IBM437") ? Charset.forName("IBM437") : Charset.forName("US-ASCII");
+    Canvas canvas = new Canvas(16 * CELL_WIDTH, 16 * CELL_HEIGHT);
+    GraphicsContext graphics = canvas.getGraphicsContext2D();
+    graphics.setFill(Color.BLACK);
+    graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    graphics.setFill(Color.WHITE);
+    graphics.setFont(Font.font("Monospaced", 14));
+    graphics.setTextBaseline(VPos.CENTER);
+
+    for (int character = 0; character < 256; character++) {
+      String glyph = new String(new byte[]{(byte) character}, charset);
+      if (glyph.isEmpty() || Character.isISOControl(glyph.charAt(0)) || glyph.charAt(0) == '\uFFFD') {
+        continue;
+      }
+      int x = (character % 16) * CELL_WIDTH;
+      int y = (character / 16) * CELL_HEIGHT;
+      graphics.save();
+      graphics.beginPath();
+      graphics.rect(x, y, CELL_WIDTH, CELL_HEIGHT);
+      graphics.clip();
+      graphics.fillText(glyph, x, y + CELL_HEIGHT / 2.0);
+      graphics.restore();
+    }
+
+    SnapshotParameters parameters = new SnapshotParameters();
+    parameters.setFill(Color.BLACK);
+    PixelReader reader = canvas.snapshot(parameters, null).getPixelReader();
+    for (int character = 0; character < 256; character++) {
+      byte[] coverage = new byte[CELL_PIXELS];
+      int x = (character % 16) * CELL_WIDTH;
+      int y = (character / 16) * CELL_HEIGHT;
+      for (int i = 0; i < CELL_PIXELS; i++) {
+        coverage[i] = (byte) ((reader.getArgb(x + i % CELL_WIDTH, y + i / CELL_WIDTH) >> 8) & 0xFF);
+      }
+      atlas[character] = coverage;
+    }
+  }
+
+  // The pixels of a character in the colors of an attribute, built on first use
+  private int[] glyph(int character, int attribute) {
+    int[] glyph = glyphs[character << 8 | attribute];
+    if (glyph == null) {
+      int foreground = TextDevice.COLORS[attribute & 0x0F];
+      int background = TextDevice.COLORS[attribute >>> 4];
+      byte[] coverage = atlas[character];
+      glyph = new int[CELL_PIXELS];
+      for (int i = 0; i < CELL_PIXELS; i++) {
+        glyph[i] = blend(background, foreground, coverage[i] & 0xFF);
+      }
+      glyphs[character << 8 | attribute] = glyph;
+    }
+    return glyph;
+  }
+
+  private void paintCell(int column, int row, int character, int attribute, boolean cursor) {
+    int[] glyph = glyph(character, attribute);
+    int foreground = 0xFF000000 | TextDevice.COLORS[attribute & 0x0F];
+    int index = row * CELL_HEIGHT * WIDTH + column * CELL_WIDTH;
+    for (int line = 0; line < CELL_HEIGHT; line++, index += WIDTH) {
+      if (cursor && line >= CELL_HEIGHT - CURSOR_LINES) {
+        for (int x = 0; x < CELL_WIDTH; x++) {
+          pixels.put(index + x, foreground);
+        }
+      } else {
+        pixels.put(index, glyph, line * CELL_WIDTH, CELL_WIDTH);
+      }
+    }
+  }
+
+  // Mixes two 0xRRGGBB colors into an opaque ARGB pixel, weight 0 to 255 for the second one
+  private static int blend(int from, int to, int weight) {
+    int pixel = 0xFF000000;
+    for (int shift = 0; shift <= 16; shift += 8) {
+      int a = (from >> shift) & 0xFF;
+      int b = (to >> shift) & 0xFF;
+      pixel |= (a + (b - a) * weight / 255) << shift;
+    }
+    return pixel;
+  }
+}
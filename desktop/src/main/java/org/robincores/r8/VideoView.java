@@ -0,0 +1,72 @@
+package org.robincores.r8;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.robincores.r8.system.VideoDevice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Shows the framebuffer of a {@link VideoDevice}, updated once per display frame.
+ * <p>
+ * The pixels live in a direct buffer that the image shares through a {@link PixelBuffer},
+ * so a frame is converted straight into the texture source without another copy. Only
+ * the lines that changed are handed to JavaFX as dirty. All of this runs on the FX
+ * thread on complete frames handed over by the device; the CPU thread is never waited
+ * for.
+ */
+public class VideoView {
+  private final VideoDevice video;
+  private final IntBuffer pixels;
+  private final PixelBuffer<IntBuffer> pixelBuffer;
+  private final ImageView imageView;
+  private final AnimationTimer timer;
+
+  /**
+   * @param video The video device to show, of a system that is not running yet.
+   * @param scale The size of a guest pixel on screen.
+   */
+  public VideoView(VideoDevice video, double scale) {
+    this.video = video;
+    video.attachDisplay();
+
+    int width = VideoDevice.WIDTH;
+    int height = VideoDevice.HEIGHT;
+    pixels = ByteBuffer.allocateDirect(4 * width * height).order(ByteOrder.nativeOrder()).asIntBuffer();
+    pixelBuffer = new PixelBuffer<>(width, height, pixels, PixelFormat.getIntArgbPreInstance());
+
+    imageView = new ImageView(new WritableImage(pixelBuffer));
+    imageView.setFitWidth(width * scale);
+    imageView.setFitHeight(height * scale);
+    imageView.setSmooth(false);  // Keep guest pixels sharp
+
+    timer = new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        pixelBuffer.updateBuffer(buffer -> {
+          VideoDevice.Region region = video.convertFrame(pixels);
+          return (region != null) ? new Rectangle2D(0, region.firstLine(), width, region.lineCount())
+              : Rectangle2D.EMPTY;
+        });
+      }
+    };
+  }
+
+  public ImageView getNode() {
+    return imageView;
+  }
+
+  public void start() {
+    timer.start();
+  }
+
+  public void stop() {
+    timer.stop();
+  }
+}
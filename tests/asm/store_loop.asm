@@ -0,0 +1,49 @@
+; Busy loop of the allocation and VRAM tests: counts down from 1000, storing a running sum
+; to 0x2000 on every step and to 0x3000 after every 1000 steps. It never halts.
+; The tests load it at 0 and patch the two store addresses to move the stores elsewhere,
+; see GuestPrograms.storeLoop().
+
+    .org 0
+
+    j start         ; 0x00_0000
+
+mtvec:              ; 0x00_0002: No interrupts are enabled
+    iret
+    nop
+
+start:
+    i 0x100000
+    stl sp          ; Stack at 1MB
+    i 0
+    stl @1
+
+outer:
+    i 1000
+    stl @0
+
+loop:
+    ldl @0
+    push
+    ldl @1
+    b 3
+    add
+    stl @1
+    pop
+    stl @2
+    i 0x2000        ; 0x00_001C: First store address in bytes 0x1D..0x1F
+    ldl @1
+    st
+    pop1
+    ldl @0
+    dec
+    stl @0
+    ldl @0
+    i0
+    bne loop        ; Until the counter in @0 reaches 0
+
+    ldl @1
+    i 0x3000        ; 0x00_002B: Second store address in bytes 0x2C..0x2E
+    swap
+    st
+    pop1
+    j outer
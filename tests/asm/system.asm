@@ -79,6 +79,8 @@ idle:           ; Idle Process
     b 0x06
     ecall
 
+    wfi         ; Sleep until the next interrupt
+
     j idle
 
 init:           ; Init Process